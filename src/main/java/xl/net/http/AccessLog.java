@@ -0,0 +1,301 @@
+package xl.net.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous access log.
+ * Worker threads publish records into a preallocated lock-free ring buffer, a single background thread
+ * formats them in batches and appends them to a rolling file. When the ring is full records are dropped
+ * and counted instead of slowing the request down.
+ */
+public class AccessLog implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(AccessLog.class.toString());
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final long DEFAULT_MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int DEFAULT_MAX_BACKUPS = 5;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_URI_LENGTH = 2048;
+    private static final long SEAL = 1L << 62;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US).withZone(ZoneId.systemDefault());
+
+    private final Path file;
+    private final long maxFileSize;
+    private final int maxBackups;
+
+    private final Record[] records;
+    private final int mask;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed;
+    private volatile long consumed;
+    private final LongAdder dropped;
+
+    private final Thread writer;
+    private final ByteBuffer writeBuffer;
+    private final CharsetEncoder encoder;
+    private final StringBuilder line;
+    private FileChannel channel;
+    private long fileSize;
+    private long cachedSecond;
+    private String cachedTimestamp;
+    private volatile boolean closed;
+    private volatile long end;   //The claim cursor sealed by close, every record below it is written.
+
+    /**
+     * Create an access log with the default capacity and rolling policy.
+     *
+     * @param file The log file.
+     * @throws IOException The log file cannot be opened.
+     */
+    public AccessLog(Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_BACKUPS);
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param file        The log file.
+     * @param capacity    The number of records the ring buffer can hold, rounded up to a power of two.
+     * @param maxFileSize The size in bytes at which the log file is rolled.
+     * @param maxBackups  The number of rolled files to keep, named file.1 (newest) to file.N (oldest).
+     * @throws IOException The log file cannot be opened.
+     */
+    public AccessLog(Path file, int capacity, long maxFileSize, int maxBackups) throws IOException {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxBackups = maxBackups;
+
+        this.records = new Record[size];
+        for (int i = 0; i < size; i++) records[i] = new Record();
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) published.set(i, -1);
+        this.claimed = new AtomicLong();
+        this.end = Long.MAX_VALUE;
+        this.dropped = new LongAdder();
+
+        this.writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        this.encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.line = new StringBuilder(256);
+        openFile();
+
+        this.writer = new Thread(this::writing, "access-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Publish a record, called by the worker threads. Never blocks.
+     *
+     * @param method           The HTTP method of the request.
+     * @param uri              The requested URI.
+     * @param statusCode       The status code of the response.
+     * @param bytes            The number of bytes sent to the client.
+     * @param latencyNanos     The time taken from receiving the request to sending the response.
+     * @param requesterAddress The address of the client.
+     * @return Indicate if the record is accepted, false if it was dropped.
+     */
+    public boolean log(HttpMethod method, URI uri, int statusCode, long bytes, long latencyNanos,
+                       SocketAddress requesterAddress) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (closed || sequence - consumed >= records.length) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) sequence & mask;
+        Record record = records[index];
+        record.timestamp = System.currentTimeMillis();
+        record.method = method;
+        record.uri = uri;
+        record.status = statusCode;
+        record.bytes = bytes;
+        record.latencyNanos = latencyNanos;
+        record.requesterAddress = requesterAddress;
+        published.set(index, sequence);
+        return true;
+    }
+
+    /**
+     * Get the number of records dropped because the ring buffer was full.
+     *
+     * @return The number of dropped records.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stop accepting records, write the pending ones and close the file.
+     * The claim cursor is sealed so that a late claim fails, every slot claimed before is waited for until its
+     * record is published.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        end = claimed.getAndAdd(SEAL);
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    /**
+     * The writer thread, drains the ring buffer in batches until the log is closed.
+     */
+    private void writing() {
+        while (true) {
+            long limit = end;
+            int drained = drain();
+            if (drained == 0) {
+                if (consumed >= limit) break;
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.toString());
+        }
+    }
+
+    /**
+     * Format every published record into the write buffer, flushing whenever it is full.
+     *
+     * @return The number of records drained.
+     */
+    private int drain() {
+        long next = consumed;
+        int count = 0;
+
+        while (published.get((int) next & mask) == next) {
+            Record record = records[(int) next & mask];
+            format(record);
+            record.clear();
+            consumed = ++next;
+            count++;
+        }
+
+        if (writeBuffer.position() > 0) flush();
+        return count;
+    }
+
+    private void format(Record record) {
+        line.setLength(0);
+        line.append(record.requesterAddress).append(" - - [").append(timestamp(record.timestamp)).append("] \"")
+                .append(record.method).append(' ');
+        String uri = String.valueOf(record.uri);
+        if (uri.length() > MAX_URI_LENGTH) line.append(uri, 0, MAX_URI_LENGTH);
+        else line.append(uri);
+        line.append("\" ").append(record.status).append(' ').append(record.bytes).append(' ')
+                .append(TimeUnit.NANOSECONDS.toMicros(record.latencyNanos)).append("us\n");
+
+        if (writeBuffer.remaining() < line.length() * 3) flush();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(line), writeBuffer, true);
+    }
+
+    private String timestamp(long millis) {
+        long second = millis / 1000;
+        if (second != cachedSecond || cachedTimestamp == null) {
+            cachedSecond = second;
+            cachedTimestamp = TIMESTAMP_FORMAT.format(Instant.ofEpochSecond(second));
+        }
+        return cachedTimestamp;
+    }
+
+    private void flush() {
+        writeBuffer.flip();
+        try {
+            if (fileSize + writeBuffer.remaining() > maxFileSize && fileSize > 0) roll();
+            while (writeBuffer.hasRemaining()) fileSize += channel.write(writeBuffer);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.toString());
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Shift the backups by one, move the current file to file.1 and reopen an empty file.
+     */
+    private void roll() throws IOException {
+        channel.close();
+        if (maxBackups > 0) {
+            for (int i = maxBackups - 1; i >= 1; i--) {
+                Path source = backup(i);
+                if (Files.exists(source)) Files.move(source, backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(file, backup(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        openFile();
+    }
+
+    private Path backup(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void openFile() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    /**
+     * A preallocated slot of the ring buffer.
+     */
+    private static final class Record {
+        private long timestamp;
+        private HttpMethod method;
+        private URI uri;
+        private int status;
+        private long bytes;
+        private long latencyNanos;
+        private SocketAddress requesterAddress;
+
+        private void clear() {
+            method = null;
+            uri = null;
+            requesterAddress = null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package xl.net.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Cleartext connection over an AsynchronousSocketChannel.
+ */
+class AsyncSocketConnection implements HttpConnection {
+
+    private static final CompletionHandler<Long, CompletableFuture<Long>> GATHERING_WRITE =
+            new CompletionHandler<Long, CompletableFuture<Long>>() {
+                @Override
+                public void completed(Long result, CompletableFuture<Long> attachment) {
+                    attachment.complete(result);
+                }
+
+                @Override
+                public void failed(Throwable exc, CompletableFuture<Long> attachment) {
+                    attachment.completeExceptionally(exc);
+                }
+            };
+
+    private final AsynchronousSocketChannel channel;
+
+    public AsyncSocketConnection(AsynchronousSocketChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        return await(channel.read(dst), timeout, unit);
+    }
+
+    @Override
+    public void read(ByteBuffer dst, long timeout, TimeUnit unit, CompletionHandler<Integer, ByteBuffer> handler) {
+        channel.read(dst, timeout, unit, dst, handler);
+    }
+
+    @Override
+    public void write(ByteBuffer src, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (src.hasRemaining()) {
+            await(channel.write(src), deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer[] srcs, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int first = 0;
+        while (first < srcs.length) {
+            if (!srcs[first].hasRemaining()) {
+                first++;
+                continue;
+            }
+            CompletableFuture<Long> written = new CompletableFuture<>();
+            long remaining = deadline - System.nanoTime();
+            channel.write(srcs, first, srcs.length - first, remaining, TimeUnit.NANOSECONDS, written, GATHERING_WRITE);
+            await(written, remaining, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() throws IOException {
+        return channel.getRemoteAddress();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static <T> T await(Future<T> future, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        try {
+            return future.get(timeout, unit);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.toString());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package xl.net.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single thread waiting on a Selector for idle SocketChannelConnections to become readable,
+ * so that keep-alive connections of the blocking listeners do not occupy a worker thread either.
+ * The poller also hands every worker thread a selector of its own for the blocking waits of the connections
+ * it serves, so the number of selectors follows the number of threads rather than connections.
+ */
+final class ChannelPoller implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ChannelPoller.class.toString());
+    private static final long TICK_MILLIS = 250;
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    private final Selector selector;
+    private final Queue<SocketChannelConnection> registrations;
+    private final ThreadLocal<Selector> waitSelectors;
+    private final Queue<Selector> openedWaitSelectors;
+    private final Thread thread;
+    private volatile boolean running;
+
+    ChannelPoller() throws IOException {
+        this.selector = Selector.open();
+        this.registrations = new ConcurrentLinkedQueue<>();
+        this.waitSelectors = new ThreadLocal<>();
+        this.openedWaitSelectors = new ConcurrentLinkedQueue<>();
+        this.running = true;
+        this.thread = new Thread(this::polling, "http-channel-poller");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Wait for a connection to become readable, the connection is notified once it is or once its read expires.
+     */
+    void register(SocketChannelConnection connection) {
+        registrations.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Get the selector of the calling thread for blocking waits, opened on first use and closed with the poller.
+     */
+    Selector waitSelector() throws IOException {
+        Selector waitSelector = waitSelectors.get();
+        if (waitSelector == null) {
+            waitSelector = Selector.open();
+            waitSelectors.set(waitSelector);
+            openedWaitSelectors.add(waitSelector);
+        }
+        return waitSelector;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Selector waitSelector;
+        while ((waitSelector = openedWaitSelectors.poll()) != null) waitSelector.close();
+    }
+
+    private void polling() {
+        try {
+            while (running) {
+                selector.select(TICK_MILLIS);
+
+                // Registered after select() so that the keys cancelled by the previous round are gone.
+                SocketChannelConnection connection;
+                while ((connection = registrations.poll()) != null) {
+                    try {
+                        connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+                    } catch (ClosedChannelException e) {
+                        connection.pollFailed(e);
+                    }
+                }
+
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    key.cancel();
+                    ((SocketChannelConnection) key.attachment()).pollReadable();
+                }
+
+                long now = System.nanoTime();
+                for (SelectionKey key : selector.keys()) {
+                    SocketChannelConnection attached = (SocketChannelConnection) key.attachment();
+                    if (key.isValid() && attached.isExpired(now)) {
+                        key.cancel();
+                        attached.pollTimedOut();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.toString());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid()) ((SocketChannelConnection) key.attachment()).pollFailed(new ClosedChannelException());
+            }
+            SocketChannelConnection connection;
+            while ((connection = registrations.poll()) != null) connection.pollFailed(new ClosedChannelException());
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, e.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package xl.net.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encapsulate a cookie sent to the client with a Set-Cookie header.
+ * The name, the value and the attributes are checked against the RFC 6265 grammar when set, so that a value
+ * taken from a request cannot inject attributes or headers.
+ * (Getters and Setters in this class is not commented as they are self-explain.)
+ */
+public class Cookie {
+
+    private String name;
+    private String value;
+    private String domain;
+    private String path;
+    private long maxAge;
+    private boolean secure;
+    private boolean httpOnly;
+    private String sameSite;
+
+    /**
+     * The constructor, the cookie lasts until the client is closed unless a max age is set.
+     *
+     * @param name  The cookie name, a token.
+     * @param value The cookie value, made of cookie-octets optionally enclosed in double quotes.
+     * @throws IllegalArgumentException The name or the value is not allowed by RFC 6265.
+     */
+    public Cookie(String name, String value) {
+        if (name == null || name.isEmpty() || !isToken(name))
+            throw new IllegalArgumentException("Invalid cookie name: " + name);
+        this.name = name;
+        setValue(value);
+        this.maxAge = -1;
+    }
+
+    /**
+     * Parse the value of a Cookie request header into name/value pairs.
+     * Pairs without '=' are ignored, the first occurrence of a name wins.
+     *
+     * @param header The header value, may be null.
+     * @return The cookies in the order they were sent.
+     */
+    public static Map<String, String> parse(String header) {
+        Map<String, String> cookies = new LinkedHashMap<>();
+        if (header == null) return cookies;
+
+        for (String pair : header.split(";")) {
+            int separator = pair.indexOf('=');
+            if (separator <= 0) continue;
+            String value = pair.substring(separator + 1).trim();
+            if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\""))
+                value = value.substring(1, value.length() - 1);
+            cookies.putIfAbsent(pair.substring(0, separator).trim(), value);
+        }
+        return cookies;
+    }
+
+    /**
+     * Encode the cookie as the value of a Set-Cookie header.
+     *
+     * @return The header value.
+     */
+    public String toSetCookieValue() {
+        StringBuilder sb = new StringBuilder(name.length() + value.length() + 32);
+        sb.append(name).append('=').append(value);
+        if (maxAge >= 0) sb.append("; Max-Age=").append(maxAge);
+        if (domain != null) sb.append("; Domain=").append(domain);
+        if (path != null) sb.append("; Path=").append(path);
+        if (secure) sb.append("; Secure");
+        if (httpOnly) sb.append("; HttpOnly");
+        if (sameSite != null) sb.append("; SameSite=").append(sameSite);
+        return sb.toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        if (value == null || !isCookieValue(value)) throw new IllegalArgumentException("Invalid cookie value.");
+        this.value = value;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        checkAttribute(domain);
+        this.domain = domain;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        checkAttribute(path);
+        this.path = path;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Set the lifetime of the cookie, 0 asks the client to delete it and -1 keeps it until the client is closed.
+     *
+     * @param maxAge The lifetime in seconds.
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public boolean isSecure() {
+        return secure;
+    }
+
+    public void setSecure(boolean secure) {
+        this.secure = secure;
+    }
+
+    public boolean isHttpOnly() {
+        return httpOnly;
+    }
+
+    public void setHttpOnly(boolean httpOnly) {
+        this.httpOnly = httpOnly;
+    }
+
+    public String getSameSite() {
+        return sameSite;
+    }
+
+    public void setSameSite(String sameSite) {
+        if (sameSite != null && !isToken(sameSite)) throw new IllegalArgumentException("Invalid SameSite attribute.");
+        this.sameSite = sameSite;
+    }
+
+    /**
+     * token = 1*&lt;any CHAR except CTLs or separators&gt; (RFC 2616).
+     */
+    private static boolean isToken(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c <= 0x20 || c >= 0x7f || "()<>@,;:\\\"/[]?={}".indexOf(c) >= 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * cookie-value = *cookie-octet / ( DQUOTE *cookie-octet DQUOTE ), where a cookie-octet is any US-ASCII
+     * character except CTLs, whitespace, DQUOTE, comma, semicolon and backslash.
+     */
+    private static boolean isCookieValue(String text) {
+        int start = 0;
+        int end = text.length();
+        if (end >= 2 && text.charAt(0) == '"' && text.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c <= 0x20 || c >= 0x7f || c == '"' || c == ',' || c == ';' || c == '\\') return false;
+        }
+        return true;
+    }
+
+    /**
+     * An attribute value is any character except CTLs and ';'.
+     */
+    private static void checkAttribute(String text) {
+        if (text == null) return;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x20 || c == 0x7f || c == ';' || c >= 0x80)
+                throw new IllegalArgumentException("Invalid cookie attribute: " + text);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package xl.net.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoder of response heads working on pre-encoded bytes.
+ * Status lines, common header names and registered constant headers (e.g. 'Server: Plain Old HTTP Server')
+ * are encoded once and copied as they are, the Date header is encoded once per second by a background tick,
+ * numbers are written as ASCII digits and other values are copied char by char, without any formatting.
+ */
+final class HeaderEncoder {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] COLON_SPACE = {':', ' '};
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+    private static final String[] COMMON_NAMES = {"Server", "Date", "Content-Length", "Content-Type", "Connection",
+            "Set-Cookie", "Retry-After", "Location", "Cache-Control", "Last-Modified", "Expires", "Allow"};
+
+    private static final Map<String, Map<HttpStatusCode, byte[]>> STATUS_LINES = new ConcurrentHashMap<>();
+    private static final Map<String, byte[]> NAMES = new ConcurrentHashMap<>();
+    private static final Map<String, ConstantHeader[]> CONSTANTS = new ConcurrentHashMap<>();
+    private static final byte[] SET_COOKIE;
+    private static final byte[] CONTENT_LENGTH;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[512]);
+    private static volatile byte[] dateLine;
+
+    static {
+        for (String name : COMMON_NAMES) NAMES.put(name, ascii(name + ": "));
+        SET_COOKIE = NAMES.get("Set-Cookie");
+        CONTENT_LENGTH = NAMES.get("Content-Length");
+        registerConstant("Connection", "keep-alive");
+        registerConstant("Connection", "close");
+
+        refreshDate();
+        ScheduledExecutorService tick = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "http-date-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tick.scheduleAtFixedRate(HeaderEncoder::refreshDate, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private HeaderEncoder() {
+    }
+
+    /**
+     * Register a header whose value rarely changes, the whole line is encoded once and copied whenever a
+     * response carries the same name and value. Registering the same header again has no effect.
+     *
+     * @param name  The header name.
+     * @param value The header value.
+     */
+    static void registerConstant(String name, String value) {
+        ConstantHeader constant = new ConstantHeader(value, encodeLine(name, value));
+        CONSTANTS.merge(name, new ConstantHeader[]{constant}, (existing, added) -> {
+            for (ConstantHeader header : existing) {
+                if (header.value.equals(value)) return existing;
+            }
+            ConstantHeader[] merged = Arrays.copyOf(existing, existing.length + 1);
+            merged[existing.length] = added[0];
+            return merged;
+        });
+    }
+
+    /**
+     * Encode the head of a response followed by an entity.
+     * A Date header is added unless the response has its own, so is a Content-Length header if the content
+     * length is set and the response has no such header, header names being compared case-insensitively.
+     *
+     * @param httpVersion   The HTTP version of the status line.
+     * @param statusCode    The status code.
+     * @param headers       The headers.
+     * @param cookies       The cookies, each encoded as a Set-Cookie header.
+     * @param contentLength The content length, or -1 if unset.
+     * @param entity        The entity following the head.
+     * @return The encoded bytes, flipped.
+     */
+    static ByteBuffer encode(String httpVersion, HttpStatusCode statusCode, Map<String, String> headers,
+                             List<Cookie> cookies, long contentLength, ByteBuffer entity) {
+        Writer writer = new Writer(SCRATCH.get());
+        writer.write(statusLine(httpVersion, statusCode));
+        return encode(writer, headers, cookies, contentLength, entity);
+    }
+
+    /**
+     * Encode the head of a response with a status code not listed in HttpStatusCode, the status line is
+     * written char by char.
+     *
+     * @param httpVersion   The HTTP version of the status line.
+     * @param statusCode    The numeric status code.
+     * @param reasonPhrase  The reason phrase.
+     * @param headers       The headers.
+     * @param cookies       The cookies, each encoded as a Set-Cookie header.
+     * @param contentLength The content length, or -1 if unset.
+     * @param entity        The entity following the head.
+     * @return The encoded bytes, flipped.
+     */
+    static ByteBuffer encode(String httpVersion, int statusCode, String reasonPhrase, Map<String, String> headers,
+                             List<Cookie> cookies, long contentLength, ByteBuffer entity) {
+        Writer writer = new Writer(SCRATCH.get());
+        writer.write(httpVersion);
+        writer.write(' ');
+        writer.write(statusCode);
+        writer.write(' ');
+        writer.write(reasonPhrase);
+        writer.write(CRLF);
+        return encode(writer, headers, cookies, contentLength, entity);
+    }
+
+    private static ByteBuffer encode(Writer writer, Map<String, String> headers, List<Cookie> cookies,
+                                     long contentLength, ByteBuffer entity) {
+
+        boolean hasDate = false;
+        boolean hasContentLength = false;
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            String name = entry.getKey();
+            String value = String.valueOf(entry.getValue());
+            if (!hasDate) hasDate = name.equalsIgnoreCase("Date");
+            if (!hasContentLength) hasContentLength = name.equalsIgnoreCase("Content-Length");
+            byte[] constant = constantLine(name, value);
+            if (constant != null) {
+                writer.write(constant);
+                continue;
+            }
+            byte[] prefix = NAMES.get(name);
+            if (prefix != null) {
+                writer.write(prefix);
+            } else {
+                writer.write(name);
+                writer.write(COLON_SPACE);
+            }
+            writer.write(value);
+            writer.write(CRLF);
+        }
+
+        if (!hasDate) writer.write(dateLine);
+        if (contentLength >= 0 && !hasContentLength) {
+            writer.write(CONTENT_LENGTH);
+            writer.write(contentLength);
+            writer.write(CRLF);
+        }
+        for (Cookie cookie : cookies) {
+            writer.write(SET_COOKIE);
+            writer.write(cookie.toSetCookieValue());
+            writer.write(CRLF);
+        }
+        writer.write(CRLF);
+        if (writer.bytes.length > SCRATCH.get().length) SCRATCH.set(writer.bytes);
+
+        ByteBuffer output = ByteBuffer.allocate(writer.length + entity.remaining());
+        output.put(writer.bytes, 0, writer.length);
+        output.put(entity.duplicate());
+        output.flip();
+        return output;
+    }
+
+    private static byte[] statusLine(String httpVersion, HttpStatusCode statusCode) {
+        Map<HttpStatusCode, byte[]> lines = STATUS_LINES.get(httpVersion);
+        if (lines == null) {
+            Map<HttpStatusCode, byte[]> encoded = new EnumMap<>(HttpStatusCode.class);
+            for (HttpStatusCode code : HttpStatusCode.values()) {
+                encoded.put(code, ascii(httpVersion + " " + code.getCode() + " " + code.getReasonPhrase() + "\r\n"));
+            }
+            STATUS_LINES.putIfAbsent(httpVersion, encoded);
+            lines = STATUS_LINES.get(httpVersion);
+        }
+        return lines.get(statusCode);
+    }
+
+    private static byte[] constantLine(String name, String value) {
+        ConstantHeader[] constants = CONSTANTS.get(name);
+        if (constants == null) return null;
+        for (ConstantHeader constant : constants) {
+            if (constant.value.equals(value)) return constant.line;
+        }
+        return null;
+    }
+
+    private static void refreshDate() {
+        dateLine = encodeLine("Date", DATE_FORMAT.format(ZonedDateTime.now(ZoneOffset.UTC)));
+    }
+
+    private static byte[] encodeLine(String name, String value) {
+        Writer writer = new Writer(new byte[name.length() + value.length() + 4]);
+        writer.write(name);
+        writer.write(COLON_SPACE);
+        writer.write(value);
+        writer.write(CRLF);
+        return Arrays.copyOf(writer.bytes, writer.length);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A growable byte array the head is written into.
+     */
+    private static final class Writer {
+        private byte[] bytes;
+        private int length;
+
+        private Writer(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private void write(byte[] source) {
+            ensure(source.length);
+            System.arraycopy(source, 0, bytes, length, source.length);
+            length += source.length;
+        }
+
+        /**
+         * Copy ASCII chars as they are, a string holding any other char is encoded as UTF-8.
+         */
+        private void write(String text) {
+            int count = text.length();
+            ensure(count);
+            for (int i = 0; i < count; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    write(text.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                bytes[length + i] = (byte) c;
+            }
+            length += count;
+        }
+
+        private void write(char c) {
+            ensure(1);
+            bytes[length++] = (byte) c;
+        }
+
+        private void write(long number) {
+            if (number == 0) {
+                ensure(1);
+                bytes[length++] = '0';
+                return;
+            }
+            int digits = 0;
+            for (long n = number; n != 0; n /= 10) digits++;
+            ensure(digits);
+            for (int i = length + digits - 1; i >= length; i--) {
+                bytes[i] = (byte) ('0' + number % 10);
+                number /= 10;
+            }
+            length += digits;
+        }
+
+        private void ensure(int count) {
+            if (length + count > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+        }
+    }
+
+    /**
+     * A constant header value and its encoded line.
+     */
+    private static final class ConstantHeader {
+        private final String value;
+        private final byte[] line;
+
+        private ConstantHeader(String value, byte[] line) {
+            this.value = value;
+            this.line = line;
+        }
+    }
+}
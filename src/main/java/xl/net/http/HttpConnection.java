@@ -0,0 +1,64 @@
+package xl.net.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A connected client as seen by the server, hiding the transport (cleartext or TLS) underneath.
+ * A connection is used by a single thread at a time.
+ */
+interface HttpConnection extends Closeable {
+
+    /**
+     * Read some bytes, blocking until at least one byte is available.
+     *
+     * @param dst     The buffer to read into.
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of timeout.
+     * @return The number of bytes read, or -1 if the client closed the connection.
+     */
+    public int read(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException, TimeoutException;
+
+    /**
+     * Wait for the client to send more bytes without occupying a thread.
+     * The handler completes with the number of bytes placed into dst (possibly 0 if the bytes still need
+     * to be decoded by a following blocking read), or -1 if the client closed the connection.
+     *
+     * @param dst     The buffer to read into.
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of timeout.
+     * @param handler The callback.
+     */
+    public void read(ByteBuffer dst, long timeout, TimeUnit unit, CompletionHandler<Integer, ByteBuffer> handler);
+
+    /**
+     * Write all the remaining bytes of the buffer.
+     *
+     * @param src     The buffer to write.
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of timeout.
+     */
+    public void write(ByteBuffer src, long timeout, TimeUnit unit) throws IOException, TimeoutException;
+
+    /**
+     * Write all the remaining bytes of the buffers in order, with a single gathering write where the
+     * transport allows it.
+     *
+     * @param srcs    The buffers to write.
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of timeout.
+     */
+    public default void write(ByteBuffer[] srcs, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ByteBuffer src : srcs) write(src, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public SocketAddress getRemoteAddress() throws IOException;
+
+    public boolean isOpen();
+}
@@ -0,0 +1,152 @@
+package xl.net.http;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summarize the events of a flight recording into per-phase latency breakdowns.
+ * Usage: java -cp &lt;classpath&gt; xl.net.http.HttpEventAnalyzer server.jfr
+ */
+public class HttpEventAnalyzer {
+
+    public static final String ACCEPT_QUEUE = "accept queue";
+    public static final String RECEIVE = "receive";
+    public static final String DECODE = "decode";
+    public static final String ROUTING = "routing";
+    public static final String HANDLER = "handler";
+    public static final String ENCODE = "encode";
+    public static final String WRITE = "write";
+
+    private static final String[] PHASES = {ACCEPT_QUEUE, RECEIVE, DECODE, ROUTING, HANDLER, ENCODE, WRITE};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: HttpEventAnalyzer <recording.jfr>");
+            System.exit(1);
+        }
+
+        System.out.println(String.format("%-40s %8s %12s %12s %12s %12s",
+                "phase", "count", "mean(us)", "p50(us)", "p99(us)", "max(us)"));
+        for (PhaseStatistics statistics : analyze(Paths.get(args[0]))) {
+            System.out.println(String.format("%-40s %8d %12.1f %12.1f %12.1f %12.1f", statistics.getPhase(),
+                    statistics.getCount(), micros(statistics.getMean()), micros(statistics.getP50()),
+                    micros(statistics.getP99()), micros(statistics.getMax())));
+        }
+    }
+
+    /**
+     * Read a recording and compute the latency statistics of every phase.
+     * The handler phase is also broken down by method and route pattern, as "handler GET \/.*".
+     *
+     * @param recording The recording file.
+     * @return The statistics of the phases present in the recording, in request order.
+     * @throws IOException The recording cannot be read.
+     */
+    public static List<PhaseStatistics> analyze(Path recording) throws IOException {
+        Map<String, List<Duration>> samples = new LinkedHashMap<>();
+        for (String phase : PHASES) samples.put(phase, new ArrayList<>());
+
+        for (RecordedEvent event : RecordingFile.readAllEvents(recording)) {
+            switch (event.getEventType().getName()) {
+                case HttpEvents.CONNECTION_ACCEPTED:
+                    samples.get(ACCEPT_QUEUE).add(event.getDuration());
+                    break;
+                case HttpEvents.REQUEST_DECODED:
+                    samples.get(RECEIVE).add(event.getDuration());
+                    samples.get(DECODE).add(event.getDuration("decodeTime"));
+                    break;
+                case HttpEvents.HANDLER_EXECUTED:
+                    samples.get(ROUTING).add(event.getDuration("routingTime"));
+                    samples.get(HANDLER).add(event.getDuration());
+                    String route = HANDLER + " " + event.getString("method") + " " + event.getString("routePattern");
+                    samples.computeIfAbsent(route, k -> new ArrayList<>()).add(event.getDuration());
+                    break;
+                case HttpEvents.RESPONSE_WRITTEN:
+                    samples.get(ENCODE).add(event.getDuration("encodeTime"));
+                    samples.get(WRITE).add(event.getDuration());
+                    break;
+            }
+        }
+
+        List<PhaseStatistics> result = new ArrayList<>();
+        for (Map.Entry<String, List<Duration>> entry : samples.entrySet()) {
+            if (!entry.getValue().isEmpty()) result.add(new PhaseStatistics(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    /**
+     * Latency statistics of a phase, all durations are in nanoseconds.
+     */
+    public static final class PhaseStatistics {
+        private final String phase;
+        private final int count;
+        private final long mean;
+        private final long p50;
+        private final long p99;
+        private final long max;
+
+        private PhaseStatistics(String phase, List<Duration> durations) {
+            long[] sorted = new long[durations.size()];
+            long total = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = durations.get(i).toNanos();
+                total += sorted[i];
+            }
+            Arrays.sort(sorted);
+
+            this.phase = phase;
+            this.count = sorted.length;
+            this.mean = total / sorted.length;
+            this.p50 = percentile(sorted, 50);
+            this.p99 = percentile(sorted, 99);
+            this.max = sorted[sorted.length - 1];
+        }
+
+        /**
+         * Nearest-rank percentile of sorted samples.
+         */
+        private static long percentile(long[] sorted, int percent) {
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(rank - 1, 0)];
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package xl.net.http;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events emitted for every phase of a request.
+ * The events are recorded only while a recording has them enabled, e.g.
+ * {@code jcmd <pid> JFR.start filename=server.jfr}, and can be toggled at runtime like any other JFR event.
+ * The server starts an event only while its type is enabled, so without a recording no event is allocated and
+ * no extra timestamp is taken, tracing costs next to nothing when off.
+ * Recordings are summarized per phase by {@link HttpEventAnalyzer}.
+ */
+final class HttpEvents {
+
+    static final String CONNECTION_ACCEPTED = "xl.net.http.ConnectionAccepted";
+    static final String REQUEST_DECODED = "xl.net.http.RequestDecoded";
+    static final String HANDLER_EXECUTED = "xl.net.http.HandlerExecuted";
+    static final String RESPONSE_WRITTEN = "xl.net.http.ResponseWritten";
+
+    private static final EventType CONNECTION_ACCEPTED_TYPE = EventType.getEventType(ConnectionAccepted.class);
+    private static final EventType REQUEST_DECODED_TYPE = EventType.getEventType(RequestDecoded.class);
+    private static final EventType HANDLER_EXECUTED_TYPE = EventType.getEventType(HandlerExecuted.class);
+    private static final EventType RESPONSE_WRITTEN_TYPE = EventType.getEventType(ResponseWritten.class);
+
+    private HttpEvents() {
+    }
+
+    /**
+     * Start a ConnectionAccepted event.
+     *
+     * @return The started event, or null if no recording enables it.
+     */
+    static ConnectionAccepted beginConnectionAccepted() {
+        if (!CONNECTION_ACCEPTED_TYPE.isEnabled()) return null;
+        ConnectionAccepted event = new ConnectionAccepted();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Start a RequestDecoded event.
+     *
+     * @return The started event, or null if no recording enables it.
+     */
+    static RequestDecoded beginRequestDecoded() {
+        if (!REQUEST_DECODED_TYPE.isEnabled()) return null;
+        RequestDecoded event = new RequestDecoded();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Start a HandlerExecuted event.
+     *
+     * @return The started event, or null if no recording enables it.
+     */
+    static HandlerExecuted beginHandlerExecuted() {
+        if (!HANDLER_EXECUTED_TYPE.isEnabled()) return null;
+        HandlerExecuted event = new HandlerExecuted();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Start a ResponseWritten event.
+     *
+     * @return The started event, or null if no recording enables it.
+     */
+    static ResponseWritten beginResponseWritten() {
+        if (!RESPONSE_WRITTEN_TYPE.isEnabled()) return null;
+        ResponseWritten event = new ResponseWritten();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * A connection waiting in the executor queue between accept and its first read.
+     */
+    @Name(CONNECTION_ACCEPTED)
+    @Label("Connection Accepted")
+    @Description("Time spent by an accepted connection waiting for a worker thread.")
+    @Category({"HTTP Server"})
+    @StackTrace(false)
+    static final class ConnectionAccepted extends Event {
+        @Label("Remote Address")
+        String remoteAddress;
+
+        @Label("TLS")
+        boolean tls;
+    }
+
+    /**
+     * A request being received and decoded, including the waits for the client to send it.
+     */
+    @Name(REQUEST_DECODED)
+    @Label("Request Decoded")
+    @Description("Time spent receiving a request, decodeTime is the part spent in the decoder.")
+    @Category({"HTTP Server"})
+    @StackTrace(false)
+    static final class RequestDecoded extends Event {
+        @Label("Method")
+        String method;
+
+        @Label("URI")
+        String uri;
+
+        @Label("Body Size")
+        @DataAmount
+        long bodySize;
+
+        @Label("Decode Time")
+        @Timespan
+        long decodeTime;
+    }
+
+    /**
+     * A request being routed and passed through the filters and the handler.
+     */
+    @Name(HANDLER_EXECUTED)
+    @Label("Handler Executed")
+    @Description("Time spent in the filters and the handler, routingTime is the part spent matching the route.")
+    @Category({"HTTP Server"})
+    @StackTrace(false)
+    static final class HandlerExecuted extends Event {
+        @Label("Method")
+        String method;
+
+        @Label("Route Pattern")
+        String routePattern;
+
+        @Label("Status")
+        int status;
+
+        @Label("Routing Time")
+        @Timespan
+        long routingTime;
+    }
+
+    /**
+     * A response being encoded and written to the client.
+     */
+    @Name(RESPONSE_WRITTEN)
+    @Label("Response Written")
+    @Description("Time spent encoding and writing a response, encodeTime is the part spent encoding the head.")
+    @Category({"HTTP Server"})
+    @StackTrace(false)
+    static final class ResponseWritten extends Event {
+        @Label("Status")
+        int status;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Encode Time")
+        @Timespan
+        long encodeTime;
+    }
+}
@@ -0,0 +1,45 @@
+package xl.net.http;
+
+/**
+ * Interceptor that wraps the handling of a HTTP request, can be expressed in Lambda Expression.
+ * A filter continues the processing by calling {@link HttpFilterChain#proceed(HttpRequest, HttpResponse)},
+ * or short-circuits it by returning without doing so after preparing the response itself.
+ */
+@FunctionalInterface
+public interface HttpFilter {
+
+    public void filter(HttpRequest request, HttpResponse response, HttpFilterChain chain);
+
+    /**
+     * Create a filter that runs a hook before the rest of the chain.
+     *
+     * @param hook The hook, returning false to short-circuit the chain.
+     * @return The filter.
+     */
+    public static HttpFilter before(Before hook) {
+        return (request, response, chain) -> {
+            if (hook.before(request, response)) chain.proceed(request, response);
+        };
+    }
+
+    /**
+     * Create a filter that runs a hook after the rest of the chain has completed.
+     *
+     * @param hook The hook.
+     * @return The filter.
+     */
+    public static HttpFilter after(HttpMethodHandler hook) {
+        return (request, response, chain) -> {
+            chain.proceed(request, response);
+            hook.handle(request, response);
+        };
+    }
+
+    /**
+     * Callback function to run before a HTTP request is handled.
+     */
+    @FunctionalInterface
+    public interface Before {
+        public boolean before(HttpRequest request, HttpResponse response);
+    }
+}
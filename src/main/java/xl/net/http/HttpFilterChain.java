@@ -0,0 +1,69 @@
+package xl.net.http;
+
+import java.util.List;
+
+/**
+ * A compiled chain of filters ending with a HttpMethodHandler.
+ * The chain is a fixed linked list of nodes built once, so invoking it allocates nothing.
+ */
+public final class HttpFilterChain {
+
+    private final HttpFilter filter;
+    private final HttpFilterChain next;
+    private final HttpMethodHandler handler;
+    private final String routePattern;
+
+    private HttpFilterChain(HttpFilter filter, HttpFilterChain next, HttpMethodHandler handler, String routePattern) {
+        this.filter = filter;
+        this.next = next;
+        this.handler = handler;
+        this.routePattern = routePattern;
+    }
+
+    /**
+     * Compile the filters and the handler into a chain.
+     *
+     * @param filters The filters, in the order they should be invoked.
+     * @param handler The handler at the end of the chain.
+     * @return The head of the chain.
+     */
+    public static HttpFilterChain compile(List<HttpFilter> filters, HttpMethodHandler handler) {
+        return compile(filters, handler, null);
+    }
+
+    /**
+     * Compile the filters and the handler registered on a route into a chain.
+     *
+     * @param filters      The filters, in the order they should be invoked.
+     * @param handler      The handler at the end of the chain.
+     * @param routePattern The regular expression the handler was registered with.
+     * @return The head of the chain.
+     */
+    static HttpFilterChain compile(List<HttpFilter> filters, HttpMethodHandler handler, String routePattern) {
+        HttpFilterChain chain = new HttpFilterChain(null, null, handler, routePattern);
+        for (int i = filters.size() - 1; i >= 0; i--) {
+            chain = new HttpFilterChain(filters.get(i), chain, handler, routePattern);
+        }
+        return chain;
+    }
+
+    /**
+     * Get the regular expression of the route this chain handles.
+     *
+     * @return The pattern, or null if the chain is not bound to a route.
+     */
+    String getRoutePattern() {
+        return routePattern;
+    }
+
+    /**
+     * Pass the request to the next filter, or to the handler if no filter is left.
+     *
+     * @param request  The HTTP request.
+     * @param response The HTTP response.
+     */
+    public void proceed(HttpRequest request, HttpResponse response) {
+        if (filter == null) handler.handle(request, response);
+        else filter.filter(request, response, next);
+    }
+}
@@ -11,4 +11,13 @@ public enum HttpMethod {
     DELETE,
     LINK,
     UNLINK;
+
+    /**
+     * Indicate if sending the request several times has the same effect as sending it once.
+     *
+     * @return Indicate if the method is idempotent.
+     */
+    public boolean isIdempotent() {
+        return this == GET || this == HEAD || this == PUT || this == DELETE;
+    }
 }
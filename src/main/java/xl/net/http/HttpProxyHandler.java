@@ -0,0 +1,439 @@
+package xl.net.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reverse-proxy handler forwarding requests to a set of backends over pooled keep-alive connections.
+ * The request body is written from the decoded buffer, the response body is streamed from the backend
+ * to the client through the server buffer without being held in memory.
+ * Multipart POST bodies are decoded into parts by the server and cannot be forwarded, such requests are answered
+ * with 415 Unsupported Media Type. The status of the backend response is relayed as it is.
+ * Headers are forwarded as the client sent them, a request with a line break inside a header is answered
+ * with 400 Bad Request so that it cannot inject headers or requests into the backend connection.
+ */
+public class HttpProxyHandler implements HttpMethodHandler, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(HttpProxyHandler.class.toString());
+
+    private static final int HEAD_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_HEAD_BUFFERS = 64;
+    private static final int MAX_IDLE_CONNECTIONS = 32;
+    private static final long MAX_IDLE_TIME = 10;
+    private static final long DEFAULT_CONNECT_TIMEOUT = 5000;
+    private static final long DEFAULT_READ_TIMEOUT = 10000;
+
+    private static final byte[] CRLFCRLF = {13, 10, 13, 10};
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "proxy-authenticate", "proxy-authorization",
+            "te", "trailer", "transfer-encoding", "upgrade", "content-length"));
+
+    private final List<ProxyUpstream> upstreams;
+    private final LoadBalancing loadBalancing;
+    private final AtomicInteger nextUpstream;
+    private final BufferPool headBuffers;
+    private long connectTimeout;
+    private long readTimeout;
+    private ScheduledExecutorService healthChecker;
+
+    /**
+     * The constructor.
+     *
+     * @param upstreams     The addresses of the backends.
+     * @param loadBalancing The strategy to choose the backend of a request.
+     */
+    public HttpProxyHandler(List<InetSocketAddress> upstreams, LoadBalancing loadBalancing) {
+        this.upstreams = new ArrayList<>();
+        for (InetSocketAddress address : upstreams) {
+            this.upstreams.add(new ProxyUpstream(address, MAX_IDLE_CONNECTIONS, MAX_IDLE_TIME, TimeUnit.SECONDS));
+        }
+        this.loadBalancing = loadBalancing;
+        this.nextUpstream = new AtomicInteger();
+        this.headBuffers = new BufferPool(HEAD_BUFFER_SIZE, MAX_POOLED_HEAD_BUFFERS, false);
+        this.connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        this.readTimeout = DEFAULT_READ_TIMEOUT;
+    }
+
+    /**
+     * Set the timeouts of the backend connections.
+     *
+     * @param connectTimeout The maximum time to establish a connection.
+     * @param readTimeout    The maximum time to wait for the backend to send more bytes.
+     * @param unit           The unit of the timeouts.
+     */
+    public void setTimeouts(long connectTimeout, long readTimeout, TimeUnit unit) {
+        this.connectTimeout = unit.toMillis(connectTimeout);
+        this.readTimeout = unit.toMillis(readTimeout);
+    }
+
+    /**
+     * Periodically send 'GET path' to every backend, a backend is skipped while it fails to respond 2xx or 3xx.
+     * A backend failing a request is also skipped until its next successful check.
+     *
+     * @param path     The path of the health check endpoint.
+     * @param interval The time between two checks of a backend.
+     * @param unit     The unit of interval.
+     */
+    public synchronized void enableHealthCheck(String path, long interval, TimeUnit unit) {
+        if (healthChecker != null) throw new IllegalStateException("Health check is already enabled.");
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "proxy-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        byte[] request = ("GET " + path + " HTTP/1.0\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        healthChecker.scheduleWithFixedDelay(() -> upstreams.forEach(u -> healthCheck(u, request)),
+                0, interval, unit);
+    }
+
+    /**
+     * Stop the health check and close the idle backend connections.
+     */
+    @Override
+    public synchronized void close() {
+        if (healthChecker != null) healthChecker.shutdownNow();
+        upstreams.forEach(ProxyUpstream::closeIdle);
+    }
+
+    @Override
+    public void handle(HttpRequest request, HttpResponse response) {
+        if (request.getMethod() == HttpMethod.POST
+                && MultipartParser.boundaryOf(request.getHeaders().get("Content-Type")) != null) {
+            response.setStatusCode(HttpStatusCode.UNSUPPORTED_MEDIA_TYPE);
+            return;
+        }
+        if (hasLineBreak(request.getRawHeaders())) {
+            response.setStatusCode(HttpStatusCode.BAD_REQUEST);
+            return;
+        }
+
+        ProxyUpstream upstream = choose();
+        if (upstream == null) {
+            response.setStatusCode(HttpStatusCode.SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        upstream.getOutstanding().incrementAndGet();
+        UpstreamBody body = null;
+        try {
+            body = forward(upstream, request);
+            forwardResponseHead(body, response);
+            response.setEntityStream(body, body.remaining);
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, upstream.getAddress() + ": " + e);
+            response.setStatusCode(HttpStatusCode.BAD_GATEWAY);
+            if (body != null) body.close();
+            else upstream.getOutstanding().decrementAndGet();
+        }
+    }
+
+    /**
+     * Send the request over an idle connection, or over a new one if there is none or the idle one turns out
+     * to be closed by the backend. The request is only sent again if it is idempotent or if it was not
+     * completely written to the idle connection, so that the backend cannot apply it twice.
+     *
+     * @return The response body positioned after the head.
+     */
+    private UpstreamBody forward(ProxyUpstream upstream, HttpRequest request) throws IOException, TimeoutException {
+        ByteBuffer head = encodeRequestHead(request, upstream);
+        HttpConnection connection = upstream.acquireIdle();
+
+        if (connection != null) {
+            boolean sent = false;
+            try {
+                send(connection, head.duplicate(), request);
+                sent = true;
+                return receive(upstream, connection, request);
+            } catch (IOException e) {
+                //The backend might have closed the idle connection meanwhile.
+                upstream.discard(connection);
+                if (sent && !request.getMethod().isIdempotent()) throw e;
+            } catch (TimeoutException | RuntimeException e) {
+                upstream.discard(connection);
+                throw e;
+            }
+        }
+
+        try {
+            connection = upstream.connect(connectTimeout, TimeUnit.MILLISECONDS);
+        } catch (IOException | TimeoutException e) {
+            if (healthChecker != null) upstream.setHealthy(false);
+            throw e;
+        }
+        try {
+            send(connection, head, request);
+            return receive(upstream, connection, request);
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            upstream.discard(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * Pick a healthy backend according to the load balancing strategy.
+     *
+     * @return The backend, or null if none is healthy.
+     */
+    private ProxyUpstream choose() {
+        int size = upstreams.size();
+        int start = Math.floorMod(nextUpstream.getAndIncrement(), size);
+        ProxyUpstream chosen = null;
+
+        for (int i = 0; i < size; i++) {
+            ProxyUpstream candidate = upstreams.get((start + i) % size);
+            if (!candidate.isHealthy()) continue;
+            if (loadBalancing == LoadBalancing.ROUND_ROBIN) return candidate;
+            if (chosen == null || candidate.getOutstanding().get() < chosen.getOutstanding().get()) chosen = candidate;
+        }
+        return chosen;
+    }
+
+    private ByteBuffer encodeRequestHead(HttpRequest request, ProxyUpstream upstream) {
+        ByteBuffer body = request.getBody();
+        StringBuilder sb = new StringBuilder(256);
+
+        sb.append(request.getMethod()).append(' ').append(request.getUri());
+        if (request.getQueryString() != null) sb.append('?').append(request.getQueryString());
+        sb.append(" HTTP/1.0\r\n");
+
+        boolean hasHost = false;
+        String forwardedFor = null;
+        for (Map.Entry<String, List<String>> entry : request.getRawHeaders().entrySet()) {
+            String name = entry.getKey();
+            if (name.equalsIgnoreCase("X-Forwarded-For")) {
+                for (String value : entry.getValue()) {
+                    forwardedFor = (forwardedFor == null) ? value : forwardedFor + ", " + value;
+                }
+                continue;
+            }
+            if (HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) continue;
+            if (name.equalsIgnoreCase("Host")) hasHost = true;
+            for (String value : entry.getValue()) {
+                sb.append(name).append(": ").append(value).append("\r\n");
+            }
+        }
+
+        if (!hasHost) {
+            sb.append("Host: ").append(upstream.getAddress().getHostString()).append(':')
+                    .append(upstream.getAddress().getPort()).append("\r\n");
+        }
+        if (request.getRequesterAddress() instanceof InetSocketAddress) {
+            String client = ((InetSocketAddress) request.getRequesterAddress()).getAddress().getHostAddress();
+            forwardedFor = (forwardedFor == null) ? client : forwardedFor + ", " + client;
+        }
+        if (forwardedFor != null) sb.append("X-Forwarded-For: ").append(forwardedFor).append("\r\n");
+        if (body != null) sb.append("Content-Length: ").append(body.remaining()).append("\r\n");
+        sb.append("Connection: keep-alive\r\n\r\n");
+
+        return ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean hasLineBreak(Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (hasLineBreak(entry.getKey())) return true;
+            for (String value : entry.getValue()) {
+                if (hasLineBreak(value)) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasLineBreak(String text) {
+        return text.indexOf('\r') >= 0 || text.indexOf('\n') >= 0;
+    }
+
+    private void send(HttpConnection connection, ByteBuffer head, HttpRequest request)
+            throws IOException, TimeoutException {
+        connection.write(head, readTimeout, TimeUnit.MILLISECONDS);
+        if (request.getBody() != null) connection.write(request.getBody().duplicate(), readTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Receive the head of the backend response.
+     *
+     * @return The response body positioned after the head.
+     */
+    private UpstreamBody receive(ProxyUpstream upstream, HttpConnection connection, HttpRequest request)
+            throws IOException, TimeoutException {
+        ByteBuffer buffer = headBuffers.acquire();
+        try {
+            int headEnd;
+            while ((headEnd = indexOf(buffer, CRLFCRLF)) < 0) {
+                if (!buffer.hasRemaining()) throw new IOException("Response head is too large.");
+                if (connection.read(buffer, readTimeout, TimeUnit.MILLISECONDS) < 0)
+                    throw new IOException("Connection closed before the response head.");
+            }
+
+            buffer.flip();
+            String headText = new String(buffer.array(), 0, headEnd, StandardCharsets.ISO_8859_1);
+            buffer.position(headEnd + CRLFCRLF.length);
+            return new UpstreamBody(upstream, connection, buffer, headText, request.getMethod());
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            headBuffers.release(buffer);
+            throw e;
+        }
+    }
+
+    private void forwardResponseHead(UpstreamBody body, HttpResponse response) {
+        response.setStatus(body.statusCode, body.reasonPhrase);
+
+        for (Map.Entry<String, String> entry : body.headers.entrySet()) {
+            String name = entry.getKey();
+            if (HOP_BY_HOP_HEADERS.contains(name.toLowerCase()) || name.equalsIgnoreCase("Server")) continue;
+            response.getHeaders().put(name, entry.getValue());
+        }
+        if (body.remaining >= 0) response.setContentLength(body.remaining);
+    }
+
+    private void healthCheck(ProxyUpstream upstream, byte[] request) {
+        ByteBuffer buffer = headBuffers.acquire();
+        try (HttpConnection connection = upstream.connect(connectTimeout, TimeUnit.MILLISECONDS)) {
+            connection.write(ByteBuffer.wrap(request), readTimeout, TimeUnit.MILLISECONDS);
+            while (buffer.position() < 12) {
+                if (connection.read(buffer, readTimeout, TimeUnit.MILLISECONDS) < 0) break;
+            }
+            String statusLine = new String(buffer.array(), 0, buffer.position(), StandardCharsets.ISO_8859_1);
+            String[] elements = statusLine.split(" ");
+            upstream.setHealthy(elements.length > 1 && (elements[1].startsWith("2") || elements[1].startsWith("3")));
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            upstream.setHealthy(false);
+        } finally {
+            headBuffers.release(buffer);
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] pattern) {
+        byte[] data = buffer.array();
+        int length = buffer.position();
+        for (int i = 0; i + pattern.length <= length; i++) {
+            int j = 0;
+            while (j < pattern.length && data[i + j] == pattern[j]) j++;
+            if (j == pattern.length) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The strategy to choose the backend of a request among the healthy ones.
+     */
+    public enum LoadBalancing {
+        ROUND_ROBIN,       //Take turns.
+        LEAST_OUTSTANDING; //Pick the backend with the fewest requests in progress.
+    }
+
+    /**
+     * The response body of a backend, read directly from its connection.
+     * Closing it gives the connection back to the pool if the body has been fully read.
+     */
+    private final class UpstreamBody implements ReadableByteChannel {
+        private final ProxyUpstream upstream;
+        private final HttpConnection connection;
+        private final int statusCode;
+        private final String reasonPhrase;
+        private final Map<String, String> headers;
+        private final boolean reusable;
+        private ByteBuffer leftover;
+        private long remaining;
+        private boolean open;
+
+        private UpstreamBody(ProxyUpstream upstream, HttpConnection connection, ByteBuffer leftover,
+                             String headText, HttpMethod method) throws IOException {
+            this.upstream = upstream;
+            this.connection = connection;
+            this.leftover = leftover;
+            this.headers = new LinkedHashMap<>();
+            this.open = true;
+
+            String[] lines = headText.split("\r\n");
+            String[] statusLineElements = lines[0].split(" ", 3);
+            if (statusLineElements.length < 2 || !statusLineElements[0].startsWith("HTTP/"))
+                throw new IOException("Malformed status line: " + lines[0]);
+            this.statusCode = Integer.parseInt(statusLineElements[1]);
+            this.reasonPhrase = (statusLineElements.length == 3) ? statusLineElements[2] : "";
+
+            String contentLength = null;
+            String connectionHeader = null;
+            for (int i = 1; i < lines.length; i++) {
+                String[] headerElements = lines[i].split(":", 2);
+                if (headerElements.length != 2) continue;
+                String name = headerElements[0].trim();
+                String value = headerElements[1].trim();
+                if (name.equalsIgnoreCase("Content-Length")) contentLength = value;
+                else if (name.equalsIgnoreCase("Connection")) connectionHeader = value;
+                else if (name.equalsIgnoreCase("Transfer-Encoding"))
+                    throw new IOException("Unsupported transfer encoding " + value + ".");
+                headers.merge(name, value, (a, b) -> a + "," + b);
+            }
+
+            boolean bodyless = method == HttpMethod.HEAD || statusCode / 100 == 1 || statusCode == 204 || statusCode == 304;
+            this.remaining = bodyless ? 0 : (contentLength == null) ? -1 : Long.parseLong(contentLength);
+            this.reusable = remaining >= 0 && "keep-alive".equalsIgnoreCase(connectionHeader);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (remaining == 0) return -1;
+
+            int limit = dst.limit();
+            if (remaining > 0 && remaining < dst.remaining()) dst.limit(dst.position() + (int) remaining);
+            try {
+                int count;
+                if (leftover.hasRemaining()) {
+                    count = Math.min(leftover.remaining(), dst.remaining());
+                    ByteBuffer slice = leftover.slice();
+                    slice.limit(count);
+                    dst.put(slice);
+                    leftover.position(leftover.position() + count);
+                } else {
+                    count = connection.read(dst, readTimeout, TimeUnit.MILLISECONDS);
+                    if (count < 0) {
+                        if (remaining > 0) throw new IOException("Connection closed before the end of the response body.");
+                        remaining = 0;
+                        return -1;
+                    }
+                }
+                if (remaining > 0) remaining -= count;
+                return count;
+            } catch (TimeoutException e) {
+                throw new InterruptedByTimeoutException();
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            if (!open) return;
+            open = false;
+            headBuffers.release(leftover);
+            leftover = null;
+            if (remaining == 0 && reusable) upstream.release(connection);
+            else upstream.discard(connection);
+            upstream.getOutstanding().decrementAndGet();
+        }
+    }
+}
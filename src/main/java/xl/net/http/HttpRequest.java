@@ -5,7 +5,10 @@ import java.net.SocketAddress;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -16,17 +19,23 @@ public class HttpRequest {
 
     private HttpMethod method;
     private URI uri;
+    private String queryString;
     private String httpVersion;
     private Map<String, String> headers;
+    private Map<String, List<String>> rawHeaders;
     private Map<String, String> urlParams;
     private Map<String, String> bodyParams;
     private ByteBuffer body;
+    private List<MultipartPart> parts;
     private SocketAddress requesterAddress;
+    private Map<String, String> cookies;
 
     public HttpRequest() {
         headers = new HashMap<>();
+        rawHeaders = new LinkedHashMap<>();
         urlParams = new HashMap<>();
         bodyParams = new HashMap<>();
+        parts = new ArrayList<>();
     }
 
     private static void appendToMap(Map<String, String> map, String key, String value) throws UnsupportedEncodingException {
@@ -52,6 +61,14 @@ public class HttpRequest {
         this.uri = uri;
     }
 
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public void setQueryString(String queryString) {
+        this.queryString = queryString;
+    }
+
     public String getHttpVersion() {
         return httpVersion;
     }
@@ -68,6 +85,20 @@ public class HttpRequest {
         this.headers = headers;
     }
 
+    /**
+     * Get the headers exactly as the client sent them, without the URL decoding applied to {@link #getHeaders()}.
+     * Every occurrence of a repeated header is kept apart, in the order received.
+     *
+     * @return The header values by name.
+     */
+    public Map<String, List<String>> getRawHeaders() {
+        return rawHeaders;
+    }
+
+    void addRawHeader(String name, String value) {
+        rawHeaders.computeIfAbsent(name, n -> new ArrayList<>(1)).add(value);
+    }
+
     public Map<String, String> getUrlParams() {
         return urlParams;
     }
@@ -92,6 +123,38 @@ public class HttpRequest {
         this.body = body;
     }
 
+    public List<MultipartPart> getParts() {
+        return parts;
+    }
+
+    public void setParts(List<MultipartPart> parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * Get the cookies sent with the request, the Cookie headers are parsed on the first call only.
+     * Cookies are read from the raw headers, a value is returned as sent, without URL decoding.
+     *
+     * @return The cookie values by name.
+     */
+    public Map<String, String> getCookies() {
+        if (cookies == null) {
+            List<String> values = rawHeaders.get("Cookie");
+            cookies = Cookie.parse(values == null ? null : String.join("; ", values));
+        }
+        return cookies;
+    }
+
+    /**
+     * Get the value of a cookie sent with the request.
+     *
+     * @param name The cookie name.
+     * @return The cookie value, or null if the cookie was not sent.
+     */
+    public String getCookie(String name) {
+        return getCookies().get(name);
+    }
+
     public SocketAddress getRequesterAddress() {
         return requesterAddress;
     }
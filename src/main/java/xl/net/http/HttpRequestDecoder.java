@@ -7,7 +7,9 @@ import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  * HTTP Request decoder that hold state for half-received request.
@@ -22,8 +24,18 @@ public class HttpRequestDecoder {
     private CharsetDecoder charsetDecoder;
     private String incompleteLine;
     private int entityLength;
+    private int entityReceived;
+    private MultipartConfig multipartConfig;
+    private MultipartParser multipartParser;
+    private Predicate<HttpRequest> headersInspector;
+    private HttpStatusCode rejectionStatus;
 
     public HttpRequestDecoder() {
+        this(new MultipartConfig());
+    }
+
+    public HttpRequestDecoder(MultipartConfig multipartConfig) {
+        this.multipartConfig = multipartConfig;
         this.state = State.REQUEST_LINE;
         this.request = new HttpRequest();
         this.charsetDecoder = StandardCharsets.UTF_8.newDecoder();
@@ -40,7 +52,7 @@ public class HttpRequestDecoder {
      */
     public boolean decode(ByteBuffer buffer) {
 
-        while (buffer.hasRemaining()) {
+        while (buffer.hasRemaining() && state != State.REJECTED) {
             switch (state) {
                 case REQUEST_LINE:
                     parseRequestLine(buffer);
@@ -60,7 +72,7 @@ public class HttpRequestDecoder {
         if (!buffer.hasRemaining() && state == State.UNKNOWN_LENGTH_ENTITY)
             state = State.DONE;
 
-        return state == State.DONE;
+        return state == State.DONE || state == State.REJECTED;
     }
 
     /**
@@ -69,17 +81,55 @@ public class HttpRequestDecoder {
      * @return HTTP Request object.
      */
     public HttpRequest getResult() {
-        if (state != State.DONE)
+        if (state != State.DONE && state != State.REJECTED)
             throw new IllegalStateException("The decoding has not been done yet.");
         return request;
     }
 
+    /**
+     * Set a check run on the request once its headers are received, before any of its body is decoded.
+     * A request failing the check is completed immediately and reported by {@link #isRejected()}.
+     *
+     * @param headersInspector The check, or null to decode every request completely.
+     */
+    public void setHeadersInspector(Predicate<HttpRequest> headersInspector) {
+        this.headersInspector = headersInspector;
+    }
+
+    /**
+     * Indicate if the request was rejected, either by the headers inspector or because its multipart body is
+     * missing a length, is too large or is malformed. The body of a rejected request is not decoded any further.
+     *
+     * @return Indicate if the request was rejected.
+     */
+    public boolean isRejected() {
+        return state == State.REJECTED;
+    }
+
+    /**
+     * Get the status a rejected request should be answered with.
+     *
+     * @return 429 for a request failing the headers inspector, 411, 413 or 400 for a multipart body missing
+     * its length, too large or malformed, 400 for an invalid Content-Length, 500 for a multipart body that
+     * could not be stored, null if the request was not rejected.
+     */
+    public HttpStatusCode getRejectionStatus() {
+        return rejectionStatus;
+    }
+
     /**
      * Reset the decoder to initial state, any in-progress decoding is discarded.
      */
     public void reset() {
+        if (multipartParser != null) multipartParser.discard();
+        multipartParser = null;
+        rejectionStatus = null;
         state = State.REQUEST_LINE;
         request = new HttpRequest();
+        charsetDecoder.reset();
+        incompleteLine = "";
+        entityLength = -1;
+        entityReceived = 0;
     }
 
     private void parseRequestLine(ByteBuffer buffer) {
@@ -87,11 +137,14 @@ public class HttpRequestDecoder {
             String requestLine = tryReadLine(buffer);
             if (requestLine != null) {
                 String[] requestLineElements = requestLine.split(" ");
-                String[] uriElements = requestLineElements[1].split("\\?");
+                String[] uriElements = requestLineElements[1].split("\\?", 2);
                 request.setMethod(HttpMethod.valueOf(requestLineElements[0]));
                 request.setUri(URI.create(uriElements[0]));
                 request.setHttpVersion(requestLineElements[2]);
-                if (uriElements.length == 2) parseUrlParameters(uriElements[1]);
+                if (uriElements.length == 2) {
+                    request.setQueryString(uriElements[1]);
+                    parseUrlParameters(uriElements[1]);
+                }
                 state = State.HEADERS;
             }
         } catch (CharacterCodingException e) {
@@ -104,7 +157,27 @@ public class HttpRequestDecoder {
             String headerLine = tryReadLine(buffer);
             if (headerLine != null) {
                 if (headerLine.isEmpty()) {
+                    if (headersInspector != null && !headersInspector.test(request)) {
+                        reject(HttpStatusCode.TOO_MANY_REQUESTS);
+                        return;
+                    }
                     String contentLength = request.getHeaders().get("Content-Length");
+                    if (request.getMethod() == HttpMethod.POST) {
+                        String boundary = MultipartParser.boundaryOf(request.getHeaders().get("Content-Type"));
+                        if (boundary != null) {
+                            // A multipart body is streamed, the end of the body must be known rather than guessed
+                            // from the end of a read.
+                            if (contentLength == null) {
+                                reject(HttpStatusCode.LENGTH_REQUIRED);
+                                return;
+                            }
+                            if (Long.parseLong(contentLength.trim()) > multipartConfig.getMaxTotalSize()) {
+                                reject(HttpStatusCode.PAYLOAD_TOO_LARGE);
+                                return;
+                            }
+                            multipartParser = new MultipartParser(boundary, multipartConfig);
+                        }
+                    }
                     if (contentLength == null) {
                         state = State.UNKNOWN_LENGTH_ENTITY;
                     } else {
@@ -115,10 +188,14 @@ public class HttpRequestDecoder {
                     Map<String, String> headers = request.getHeaders();
                     String[] headerElements = headerLine.split(":", -1);
                     appendToMap(headers, headerElements[0], headerElements[1]);
+                    int separator = headerLine.indexOf(':');
+                    request.addRawHeader(headerLine.substring(0, separator).trim(), headerLine.substring(separator + 1).trim());
                 }
             }
         } catch (UnsupportedEncodingException | CharacterCodingException e) {
             throw new UnsupportedOperationException("Character decoding failed.", e);
+        } catch (NumberFormatException e) {
+            reject(HttpStatusCode.BAD_REQUEST);
         }
     }
 
@@ -130,6 +207,11 @@ public class HttpRequestDecoder {
     }
 
     private void parseFixedLengthEntity(ByteBuffer buffer) {
+        if (multipartParser != null) {
+            parseMultipartEntity(buffer);
+            return;
+        }
+
         ByteBuffer requestBody = request.getBody();
         if (requestBody == null) requestBody = ByteBuffer.allocate(entityLength);
         requestBody.put(buffer);
@@ -143,14 +225,62 @@ public class HttpRequestDecoder {
         }
     }
 
+    /**
+     * Stream the body into the multipart parser instead of accumulating it, so large uploads are never held in memory.
+     */
+    private void parseMultipartEntity(ByteBuffer buffer) {
+        ByteBuffer chunk = buffer.slice();
+        if (chunk.remaining() > entityLength - entityReceived) chunk.limit(entityLength - entityReceived);
+        entityReceived += chunk.remaining();
+        buffer.position(buffer.position() + chunk.remaining());
+
+        try {
+            multipartParser.parse(chunk);
+            if (entityReceived == entityLength) completeMultipartEntity();
+        } catch (MultipartParser.LimitExceededException e) {
+            reject(HttpStatusCode.PAYLOAD_TOO_LARGE);
+        } catch (IllegalStateException e) {
+            reject(HttpStatusCode.BAD_REQUEST);
+        } catch (UnsupportedOperationException e) {
+            //The content could not be stored, e.g. the temporary directory is full.
+            reject(HttpStatusCode.INTERNAL_ERROR);
+        }
+    }
+
+    /**
+     * Expose the parts of the request, the form fields kept in memory are also exposed as body parameters,
+     * a repeated field being joined like a repeated url-encoded parameter.
+     */
+    private void completeMultipartEntity() {
+        List<MultipartPart> parts = multipartParser.finish();
+        Map<String, String> bodyParams = request.getBodyParams();
+        for (MultipartPart part : parts) {
+            if (part.getFilename() == null && part.isInMemory() && part.getName() != null)
+                bodyParams.merge(part.getName(), part.getString(), (existing, added) -> existing + " || " + added);
+        }
+        request.setParts(parts);
+        multipartParser = null;
+        state = State.DONE;
+    }
+
+    /**
+     * Stop decoding the request, the parts of a multipart body parsed so far are deleted.
+     */
+    private void reject(HttpStatusCode status) {
+        if (multipartParser != null) multipartParser.discard();
+        multipartParser = null;
+        rejectionStatus = status;
+        state = State.REJECTED;
+    }
+
     private boolean parseUrlParameters(String params) {
         try {
             String[] paramsText = params.split("&");
             Map<String, String> urlParams = request.getUrlParams();
 
             for (String p : paramsText) {
-                String[] paramParts = p.split("=", -1);
-                appendToMap(urlParams, paramParts[0], paramParts[1]);
+                String[] paramParts = p.split("=", 2);
+                appendToMap(urlParams, paramParts[0], (paramParts.length == 2) ? paramParts[1] : "");
             }
             return true;
         } catch (UnsupportedEncodingException e) {
@@ -165,8 +295,8 @@ public class HttpRequestDecoder {
             Map<String, String> bodyParams = request.getBodyParams();
 
             for (String p : paramsText) {
-                String[] paramParts = p.split("=", -1);
-                appendToMap(bodyParams, paramParts[0], paramParts[1]);
+                String[] paramParts = p.split("=", 2);
+                appendToMap(bodyParams, paramParts[0], (paramParts.length == 2) ? paramParts[1] : "");
             }
             return true;
         } catch (UnsupportedEncodingException | CharacterCodingException e) {
@@ -222,7 +352,8 @@ public class HttpRequestDecoder {
         HEADERS,               //The decoder is expecting HTTP headers.
         UNKNOWN_LENGTH_ENTITY, //The decoder is expecting HTTP entity (request body) with unknown length.
         FIXED_LENGTH_ENTITY,   //The 'Content-Length' header is detected previously.
-        DONE;                  //The decoding process is completed.
+        DONE,                  //The decoding process is completed.
+        REJECTED;              //The request is refused before its body is decoded, see rejectionStatus.
     }
 
 }
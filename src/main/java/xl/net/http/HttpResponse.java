@@ -3,7 +3,10 @@ package xl.net.http;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -11,48 +14,49 @@ import java.util.Map;
  */
 public class HttpResponse {
 
+    private static final ByteBuffer EMPTY_ENTITY = ByteBuffer.allocate(0);
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
     private String httpVersion;
     private HttpStatusCode statusCode;
+    private int rawStatusCode;     //A status code not listed in HttpStatusCode, 0 if unset.
+    private String reasonPhrase;
     private Map<String, String> headers;
+    private List<Cookie> cookies;
     private ByteBuffer entity;
+    private long contentLength;
+    private ReadableByteChannel entityStream;
+    private long entityStreamLength;
+    private BufferPool bufferPool;
+    private JsonWriter jsonWriter;
+    private String replacedContentType;
 
     public HttpResponse(String httpVersion, HttpStatusCode statusCode) {
         this.httpVersion = httpVersion;
         this.statusCode = statusCode;
         this.headers = new LinkedHashMap<>();
+        this.cookies = new ArrayList<>();
         this.entity = ByteBuffer.allocate(0);
+        this.contentLength = -1;
     }
 
+    /**
+     * Encode the status line, the headers and the entity of a response.
+     * Every cookie is encoded as a Set-Cookie header of its own, following the other headers.
+     * If an entity stream or a JSON writer is set, only the status line and the headers are encoded.
+     *
+     * @param response The response.
+     * @return The encoded bytes.
+     */
     public static ByteBuffer output(HttpResponse response) {
-        try {
-            StringBuilder sb = new StringBuilder(50);
-
-            String httpVersion = response.httpVersion;
-            HttpStatusCode statusCode = response.statusCode;
-            Map<String, String> headers = response.headers;
-            ByteBuffer entity = response.entity;
-
-            String statusLine = String.format("%s %d %s\r\n",
-                    httpVersion, statusCode.getCode(), statusCode.getReasonPhrase());
-            sb.append(statusLine);
-
-            for (Map.Entry entry : headers.entrySet()) {
-                String headerLine = String.format("%s: %s\r\n", entry.getKey(), entry.getValue());
-                sb.append(headerLine);
-            }
-
-            sb.append("\r\n");
-
-            byte[] headBytes = sb.toString().getBytes("UTF-8");
-            ByteBuffer ret = ByteBuffer.allocate(headBytes.length + entity.limit());
-            ret.put(headBytes);
-            ret.put(entity);
-
-            ret.flip();
-            return ret;
-        } catch (UnsupportedEncodingException e) {
-            throw new UnsupportedOperationException("Failed to encode the response.", e);
+        boolean entityIsSeparate = response.entityStream != null || response.jsonWriter != null;
+        ByteBuffer entity = entityIsSeparate ? EMPTY_ENTITY : response.entity;
+        if (response.rawStatusCode != 0) {
+            return HeaderEncoder.encode(response.httpVersion, response.rawStatusCode, response.reasonPhrase,
+                    response.headers, response.cookies, response.contentLength, entity);
         }
+        return HeaderEncoder.encode(response.httpVersion, response.statusCode, response.headers, response.cookies,
+                response.contentLength, entity);
     }
 
     public void setHeader(String headerName, String content) {
@@ -70,12 +74,63 @@ public class HttpResponse {
         return headers;
     }
 
+    public List<Cookie> getCookies() {
+        return cookies;
+    }
+
+    /**
+     * Send a cookie to the client with a Set-Cookie header.
+     *
+     * @param cookie The cookie.
+     */
+    public void addCookie(Cookie cookie) {
+        cookies.add(cookie);
+    }
+
+    /**
+     * Get the status code.
+     *
+     * @return The status code, or null if it was set by {@link #setStatus(int, String)} with a code not listed
+     * in HttpStatusCode.
+     */
     public HttpStatusCode getStatusCode() {
         return statusCode;
     }
 
     public void setStatusCode(HttpStatusCode statusCode) {
         this.statusCode = statusCode;
+        this.rawStatusCode = 0;
+        this.reasonPhrase = null;
+    }
+
+    /**
+     * Get the numeric status code, including a code not listed in HttpStatusCode.
+     *
+     * @return The numeric status code.
+     */
+    public int getStatus() {
+        return (rawStatusCode != 0) ? rawStatusCode : statusCode.getCode();
+    }
+
+    /**
+     * Set any status code with its reason phrase, e.g. to relay the status of another server as it is.
+     * A code listed in HttpStatusCode is also reported by {@link #getStatusCode()}.
+     *
+     * @param code         The numeric status code, three digits.
+     * @param reasonPhrase The reason phrase, without line breaks.
+     */
+    public void setStatus(int code, String reasonPhrase) {
+        if (code < 100 || code > 999) throw new IllegalArgumentException("Invalid status code " + code + ".");
+        if (reasonPhrase.indexOf('\r') >= 0 || reasonPhrase.indexOf('\n') >= 0)
+            throw new IllegalArgumentException("Invalid reason phrase.");
+        HttpStatusCode listed = HttpStatusCode.fromCode(code);
+        if (listed != null && listed.getReasonPhrase().equals(reasonPhrase)) {
+            setStatusCode(listed);
+            return;
+        }
+        this.statusCode = listed;
+        this.rawStatusCode = code;
+        this.reasonPhrase = reasonPhrase;
     }
 
     public ByteBuffer getEntity() {
@@ -85,4 +140,79 @@ public class HttpResponse {
     public void setEntity(ByteBuffer entity) {
         this.entity = entity;
     }
+
+    /**
+     * Write the entity as JSON, encoded straight into pooled buffers which the server writes out after the
+     * headers with the Content-Length of the document. The Content-Type is set to application/json and the
+     * entity set by {@link #setEntity(ByteBuffer)} is ignored.
+     *
+     * @return The writer of the entity, the same one on every call.
+     */
+    public JsonWriter writeJson() {
+        if (jsonWriter == null) {
+            jsonWriter = new JsonWriter(bufferPool != null ? bufferPool : new BufferPool(4096, 0, false));
+            replacedContentType = headers.put("Content-Type", JSON_CONTENT_TYPE);
+        }
+        return jsonWriter;
+    }
+
+    public JsonWriter getJsonWriter() {
+        return jsonWriter;
+    }
+
+    /**
+     * Give the buffers of the JSON writer back to the pool and drop the JSON entity.
+     * The Content-Type set by {@link #writeJson()} is reverted, unless it was changed since.
+     */
+    void releaseJson() {
+        if (jsonWriter == null) return;
+        jsonWriter.release();
+        jsonWriter = null;
+        if (JSON_CONTENT_TYPE.equals(headers.get("Content-Type"))) {
+            if (replacedContentType != null) headers.put("Content-Type", replacedContentType);
+            else headers.remove("Content-Type");
+        }
+        replacedContentType = null;
+    }
+
+    /**
+     * Set the pool the JSON writer takes its buffers from.
+     */
+    void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Set the length of the entity, written as a Content-Length header unless the headers already have one.
+     *
+     * @param contentLength The length, or -1 to omit the header.
+     */
+    public void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    public ReadableByteChannel getEntityStream() {
+        return entityStream;
+    }
+
+    public long getEntityStreamLength() {
+        return entityStreamLength;
+    }
+
+    /**
+     * Stream the entity from a channel instead of a buffer, the server copies it to the client through a
+     * pooled buffer after the headers and closes the channel afterward. The entity set by
+     * {@link #setEntity(ByteBuffer)} is ignored.
+     *
+     * @param entityStream The channel to read the entity from.
+     * @param length       The length of the entity, or -1 if it is delimited by the end of the channel.
+     */
+    public void setEntityStream(ReadableByteChannel entityStream, long length) {
+        this.entityStream = entityStream;
+        this.entityStreamLength = length;
+    }
 }
@@ -1,18 +1,30 @@
 package xl.net.http;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
 import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousServerSocketChannel;
 import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Simple HTTP 1.0 Server.
@@ -22,45 +34,111 @@ public class HttpServer {
     private static final Logger LOGGER = Logger.getLogger(HttpServer.class.toString());
 
     private static final int BUFFER_SIZE = 4096;
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_STREAM_BUFFERS = 64;
     private static final int RECEIVE_TIMEOUT = 10;
     private static final int SEND_TIMEOUT = 10;
+    private static final int KEEP_ALIVE_TIMEOUT = 15;
 
     private static final String HTTP_VERSION = "HTTP/1.0";
     private static final String SERVER_NAME = "Plain Old HTTP Server";
+    private static final String RETRY_AFTER = "1";
+    private static final ByteBuffer TOO_MANY_REQUESTS = ByteBuffer.wrap((HTTP_VERSION + " 429 Too Many Requests\r\n"
+            + "Server: " + SERVER_NAME + "\r\nRetry-After: " + RETRY_AFTER + "\r\nContent-Length: 0\r\n"
+            + "Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1)).asReadOnlyBuffer();
+
+    static {
+        HeaderEncoder.registerConstant("Server", SERVER_NAME);
+    }
 
     private AsynchronousServerSocketChannel server;
+    private List<ServerSocketChannel> channelListeners;
+    private ChannelPoller poller;
+    private boolean started;
     private ExecutorService executor;
-    private List<MethodHandlerEntry> getHandlers;
-    private List<MethodHandlerEntry> postHandlers;
-    private List<MethodHandlerEntry> putHandlers;
-    private List<MethodHandlerEntry> deleteHandlers;
+    private AtomicReference<RouteTable> routes;
+    private Set<HttpConnection> idleConnections;
+    private AtomicInteger openConnections;
+    private AtomicInteger inFlightRequests;
+    private volatile boolean draining;
+    private volatile AccessLog accessLog;
+    private volatile MultipartConfig multipartConfig;
+    private volatile RateLimiter rateLimiter;
+    private TlsConfig tlsConfig;
+    private BufferPool streamBuffers;
 
     /**
      * The constructor.
      *
-     * @param listenAddress The listening address and port.
+     * @param listenAddress The listening address and port, or the path of a Unix domain socket.
      * @throws IOException The specified address and port is already occupied by other program.
      */
     public HttpServer(SocketAddress listenAddress) throws IOException {
-        int coreCount = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+        this(listenAddress, null);
+    }
 
-        server = AsynchronousServerSocketChannel.open();
-        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
-        server.bind(listenAddress);
+    /**
+     * Create a server speaking HTTPS, every accepted connection is encrypted with the given TLS settings.
+     *
+     * @param listenAddress The listening address and port, or the path of a Unix domain socket.
+     * @param tlsConfig     The TLS settings, or null to speak cleartext HTTP.
+     * @throws IOException The specified address and port is already occupied by other program.
+     */
+    public HttpServer(SocketAddress listenAddress, TlsConfig tlsConfig) throws IOException {
+        int coreCount = Math.max(Runtime.getRuntime().availableProcessors(), 2);
 
         executor = Executors.newFixedThreadPool(coreCount);
+        channelListeners = new CopyOnWriteArrayList<>();
+
+        routes = new AtomicReference<>(RouteTable.empty());
+        idleConnections = ConcurrentHashMap.newKeySet();
+        openConnections = new AtomicInteger();
+        inFlightRequests = new AtomicInteger();
+        multipartConfig = new MultipartConfig();
+        this.tlsConfig = tlsConfig;
+        streamBuffers = new BufferPool(STREAM_BUFFER_SIZE, MAX_POOLED_STREAM_BUFFERS, true);
+
+        if (listenAddress instanceof UnixDomainSocketAddress) {
+            addListener(listenAddress);
+        } else {
+            server = AsynchronousServerSocketChannel.open();
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(listenAddress);
+        }
+    }
 
-        getHandlers = new ArrayList<>();
-        postHandlers = new ArrayList<>();
-        putHandlers = new ArrayList<>();
-        deleteHandlers = new ArrayList<>();
+    /**
+     * Listen on another address too, sharing the handlers, filters and settings of this server.
+     * The address can be the path of a Unix domain socket, so that clients on the same host skip the
+     * TCP loopback stack. Every added listener accepts on a thread of its own, the socket file of a
+     * Unix domain socket is deleted on shutdown.
+     *
+     * @param listenAddress A UnixDomainSocketAddress, or an InetSocketAddress.
+     * @throws IOException The specified address is already occupied by other program.
+     */
+    public synchronized void addListener(SocketAddress listenAddress) throws IOException {
+        boolean local = listenAddress instanceof UnixDomainSocketAddress;
+        ServerSocketChannel listener = local ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+        try {
+            if (!local) listener.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            listener.bind(listenAddress);
+            if (poller == null) poller = new ChannelPoller();
+        } catch (IOException e) {
+            listener.close();
+            throw e;
+        }
+
+        channelListeners.add(listener);
+        if (started) startAccepting(listener);
     }
 
     /**
      * Start accepting client connections.
      */
-    public void start() {
-        executor.submit(this::listening);
+    public synchronized void start() {
+        started = true;
+        if (server != null) executor.submit(this::listening);
+        for (ServerSocketChannel listener : channelListeners) startAccepting(listener);
     }
 
     /**
@@ -68,15 +146,107 @@ public class HttpServer {
      * Waiting for 5 seconds for all threads to complete their response to previously connected client.
      */
     public void shutdown() {
+        shutdown(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop accepting any new client connection and drain the connected ones.
+     * Idle keep-alive connections are closed, requests in flight are completed with 'Connection: close'.
+     *
+     * @param timeout The maximum time to wait for the requests in flight.
+     * @param unit    The unit of timeout.
+     * @return The number of requests still in flight when the timeout elapsed.
+     */
+    public int shutdown(long timeout, TimeUnit unit) {
+        draining = true;
         try {
-            server.close();
-            executor.shutdown();
-            executor.awaitTermination(5, TimeUnit.SECONDS);
+            if (server != null) server.close();
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, e.toString());
+        }
+        for (ServerSocketChannel listener : channelListeners) closeListener(listener);
+
+        for (HttpConnection client : idleConnections) {
+            if (idleConnections.remove(client)) closeQuietly(client);
+        }
+
+        try {
+            executor.shutdown();
+            executor.awaitTermination(timeout, unit);
         } catch (InterruptedException e) {
             LOGGER.log(Level.WARNING, e.toString());
         }
+        synchronized (this) {
+            if (poller != null) closeQuietly(poller);
+        }
+
+        int remaining = inFlightRequests.get();
+        if (remaining > 0) LOGGER.log(Level.WARNING, remaining + " requests are still in flight after draining.");
+        return remaining;
+    }
+
+    /**
+     * Get the number of requests currently being received, handled or responded.
+     *
+     * @return The number of requests in flight.
+     */
+    public int getInFlightRequestCount() {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * Get the addresses the server listens on, the one given to the constructor first, then the added listeners.
+     * An address bound to port 0 is reported with the port actually chosen.
+     *
+     * @return The bound addresses.
+     * @throws IOException A listener is closed.
+     */
+    public List<SocketAddress> getLocalAddresses() throws IOException {
+        List<SocketAddress> addresses = new ArrayList<>();
+        if (server != null) addresses.add(server.getLocalAddress());
+        for (ServerSocketChannel listener : channelListeners) addresses.add(listener.getLocalAddress());
+        return addresses;
+    }
+
+    /**
+     * Get the number of connected clients, including the idle keep-alive ones.
+     *
+     * @return The number of open connections.
+     */
+    public int getOpenConnectionCount() {
+        return openConnections.get();
+    }
+
+    /**
+     * Set the access log that every responded request is published to, or null to disable access logging.
+     * The server does not close the access log on shutdown.
+     *
+     * @param accessLog The access log.
+     */
+    public void setAccessLog(AccessLog accessLog) {
+        this.accessLog = accessLog;
+    }
+
+    /**
+     * Set the limits and storage settings for decoding multipart/form-data request bodies.
+     *
+     * @param multipartConfig The multipart configuration.
+     */
+    public void setMultipartConfig(MultipartConfig multipartConfig) {
+        this.multipartConfig = multipartConfig;
+    }
+
+    /**
+     * Set the rate limiter every request is checked against, or null to disable rate limiting.
+     * Clients identified by address are checked as soon as they connect, so that an abusive client is rejected
+     * before any worker thread reads from it. Requests keyed by a header, and further requests on keep-alive
+     * connections, are checked once their headers are received, before their body is decoded.
+     * Rejected requests are answered with 429 Too Many Requests and the connection is closed.
+     *
+     * @param rateLimiter The rate limiter.
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
     }
 
     /**
@@ -86,7 +256,7 @@ public class HttpServer {
      * @param handler    The handler for callback when a request is received.
      */
     public void handleGetOn(String urlPattern, HttpMethodHandler handler) {
-        getHandlers.add(new MethodHandlerEntry(urlPattern, handler));
+        updateRoutes(table -> table.withHandler(HttpMethod.GET, urlPattern, handler));
     }
 
     /**
@@ -96,7 +266,7 @@ public class HttpServer {
      * @param handler    The handler for callback when a request is received.
      */
     public void handlePostOn(String urlPattern, HttpMethodHandler handler) {
-        postHandlers.add(new MethodHandlerEntry(urlPattern, handler));
+        updateRoutes(table -> table.withHandler(HttpMethod.POST, urlPattern, handler));
     }
 
     /**
@@ -106,7 +276,7 @@ public class HttpServer {
      * @param handler    The handler for callback when a request is received.
      */
     public void handlePutOn(String urlPattern, HttpMethodHandler handler) {
-        putHandlers.add(new MethodHandlerEntry(urlPattern, handler));
+        updateRoutes(table -> table.withHandler(HttpMethod.PUT, urlPattern, handler));
     }
 
     /**
@@ -116,7 +286,41 @@ public class HttpServer {
      * @param handler    The handler for callback when a request is received.
      */
     public void handleDeleteOn(String urlPattern, HttpMethodHandler handler) {
-        deleteHandlers.add(new MethodHandlerEntry(urlPattern, handler));
+        updateRoutes(table -> table.withHandler(HttpMethod.DELETE, urlPattern, handler));
+    }
+
+    /**
+     * Unregister the handlers of a HTTP method registered with the given pattern.
+     * Requests already dispatched keep using the handlers they were routed to.
+     *
+     * @param method     The HTTP method.
+     * @param urlPattern The regular expression the handlers were registered with.
+     * @return Indicate if any handler was removed.
+     */
+    public boolean removeHandler(HttpMethod method, String urlPattern) {
+        while (true) {
+            RouteTable current = routes.get();
+            RouteTable updated = current.withoutHandler(method, urlPattern);
+            if (updated == current) return false;
+            if (routes.compareAndSet(current, updated)) return true;
+        }
+    }
+
+    /**
+     * Register a filter to intercept every request before it reaches the handler.
+     * Filters are invoked in the order they are added, the chain of every handler is recompiled at this point.
+     *
+     * @param filter The filter.
+     */
+    public void addFilter(HttpFilter filter) {
+        updateRoutes(table -> table.withFilter(filter));
+    }
+
+    /**
+     * Atomically replace the route table with a modified copy, retrying if another thread won the race.
+     */
+    private void updateRoutes(UnaryOperator<RouteTable> modification) {
+        routes.updateAndGet(modification);
     }
 
     /**
@@ -125,8 +329,20 @@ public class HttpServer {
     private void listening() {
         while (!Thread.currentThread().isInterrupted() && server.isOpen()) {
             try {
-                AsynchronousSocketChannel client = server.accept().get();
-                executor.submit(() -> processing(client));
+                AsynchronousSocketChannel channel = server.accept().get();
+                HttpEvents.ConnectionAccepted acceptedEvent = HttpEvents.beginConnectionAccepted();
+                RateLimiter limiter = rateLimiter;
+                boolean admitted = limiter != null && limiter.getKeyHeader() == null;
+                if (admitted && !limiter.tryAcquire(channel.getRemoteAddress())) {
+                    rejectAtAccept(channel);
+                    continue;
+                }
+                openConnections.incrementAndGet();
+                try {
+                    executor.submit(() -> accepted(channel, admitted, acceptedEvent));
+                } catch (RejectedExecutionException e) {
+                    closeConnection(new AsyncSocketConnection(channel));
+                }
             } catch (InterruptedException | ExecutionException e) {
                 LOGGER.log(Level.WARNING, e.toString());
             } catch (Exception e) {
@@ -135,109 +351,342 @@ public class HttpServer {
         }
     }
 
+    /**
+     * Start the thread accepting the connections of an added listener.
+     */
+    private void startAccepting(ServerSocketChannel listener) {
+        Thread acceptor = new Thread(() -> accepting(listener), "http-listener");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * The accepting thread of an added listener, blocking on accept until the listener is closed.
+     * The rate limiter checks these clients once their headers are received.
+     *
+     * @param listener The listening channel.
+     */
+    private void accepting(ServerSocketChannel listener) {
+        while (listener.isOpen()) {
+            try {
+                SocketChannel channel = listener.accept();
+                HttpEvents.ConnectionAccepted acceptedEvent = HttpEvents.beginConnectionAccepted();
+                openConnections.incrementAndGet();
+                try {
+                    executor.submit(() -> accepted(channel, acceptedEvent));
+                } catch (RejectedExecutionException e) {
+                    closeQuietly(channel);
+                    openConnections.decrementAndGet();
+                }
+            } catch (IOException e) {
+                if (listener.isOpen()) LOGGER.log(Level.SEVERE, e.toString());
+            }
+        }
+    }
+
+    private void closeListener(ServerSocketChannel listener) {
+        try {
+            SocketAddress address = listener.getLocalAddress();
+            listener.close();
+            if (address instanceof UnixDomainSocketAddress) Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.toString());
+        }
+    }
+
+    /**
+     * Answer a client over its rate with a canned response without occupying a worker thread.
+     * A TLS client is closed right away as answering it would need a handshake first.
+     *
+     * @param channel The connected client socket channel.
+     */
+    private void rejectAtAccept(AsynchronousSocketChannel channel) {
+        if (tlsConfig != null) {
+            closeQuietly(channel);
+            return;
+        }
+
+        channel.write(TOO_MANY_REQUESTS.duplicate(), SEND_TIMEOUT, TimeUnit.SECONDS, channel,
+                new CompletionHandler<Integer, AsynchronousSocketChannel>() {
+                    @Override
+                    public void completed(Integer result, AsynchronousSocketChannel attachment) {
+                        closeQuietly(attachment);
+                    }
+
+                    @Override
+                    public void failed(Throwable exc, AsynchronousSocketChannel attachment) {
+                        closeQuietly(attachment);
+                    }
+                });
+    }
+
+    /**
+     * Wrap a newly accepted channel into a connection and process its first request.
+     *
+     * @param channel       The connected client socket channel.
+     * @param admitted      Indicate if the client was already checked against the rate limiter.
+     * @param acceptedEvent The flight recorder event started when the channel was accepted, null if disabled.
+     */
+    private void accepted(AsynchronousSocketChannel channel, boolean admitted, HttpEvents.ConnectionAccepted acceptedEvent) {
+        HttpConnection client = new AsyncSocketConnection(channel);
+        try {
+            commitAccepted(acceptedEvent, channel.getRemoteAddress());
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (tlsConfig != null) client = new TlsConnection(client, tlsConfig);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.toString());
+            closeConnection(client);
+            return;
+        }
+        processing(client, ByteBuffer.allocate(BUFFER_SIZE), admitted);
+    }
+
+    /**
+     * Wrap a channel accepted by an added listener into a connection and process its first request.
+     *
+     * @param channel       The connected client socket channel.
+     * @param acceptedEvent The flight recorder event started when the channel was accepted, null if disabled.
+     */
+    private void accepted(SocketChannel channel, HttpEvents.ConnectionAccepted acceptedEvent) {
+        HttpConnection client;
+        try {
+            commitAccepted(acceptedEvent, channel.getRemoteAddress());
+            if (channel.getLocalAddress() instanceof InetSocketAddress) channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            client = new SocketChannelConnection(channel, poller);
+            if (tlsConfig != null) client = new TlsConnection(client, tlsConfig);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.toString());
+            closeQuietly(channel);
+            openConnections.decrementAndGet();
+            return;
+        }
+        processing(client, ByteBuffer.allocate(BUFFER_SIZE), false);
+    }
+
+    private void commitAccepted(HttpEvents.ConnectionAccepted acceptedEvent, SocketAddress remoteAddress) {
+        if (acceptedEvent == null) return;
+        acceptedEvent.end();
+        if (acceptedEvent.shouldCommit()) {
+            acceptedEvent.remoteAddress = String.valueOf(remoteAddress);
+            acceptedEvent.tls = tlsConfig != null;
+            acceptedEvent.commit();
+        }
+    }
+
     /**
      * Thread for processing the HTTP request.
      *
-     * @param channel The connected client socket channel for response sending.
+     * @param client The connected client for response sending.
+     * @param buffer   The receive buffer, might already contain the beginning of the request.
+     * @param admitted Indicate if the request was already checked against the rate limiter.
      */
-    private void processing(AsynchronousSocketChannel channel) {
-        try (AsynchronousSocketChannel client = channel) {
-            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
-            HttpRequestDecoder requestDecoder = new HttpRequestDecoder();
+    private void processing(HttpConnection client, ByteBuffer buffer, boolean admitted) {
+        boolean keepAlive = false;
+        long startTime = System.nanoTime();
+        inFlightRequests.incrementAndGet();
+        HttpRequestDecoder requestDecoder = new HttpRequestDecoder(multipartConfig);
+        HttpRequest request = null;
+        HttpResponse response = null;
+        ByteBuffer[] jsonEntity = null;
+        HttpEvents.RequestDecoded decodedEvent = HttpEvents.beginRequestDecoded();
+
+        try {
             boolean requestIsComplete = false;
+            SocketAddress remoteAddress = client.getRemoteAddress();
+            RateLimiter limiter = rateLimiter;
+            if (limiter != null && !admitted) {
+                requestDecoder.setHeadersInspector(r -> {
+                    r.setRequesterAddress(remoteAddress);
+                    return limiter.tryAcquire(r);
+                });
+            }
 
             while (!requestIsComplete) {
-                client.read(buffer).get(RECEIVE_TIMEOUT, TimeUnit.SECONDS);
+                if (buffer.position() == 0 && client.read(buffer, RECEIVE_TIMEOUT, TimeUnit.SECONDS) < 0) return;
                 buffer.flip();
+                long decodeStart = (decodedEvent != null) ? System.nanoTime() : 0;
                 requestIsComplete = requestDecoder.decode(buffer);
+                if (decodedEvent != null) decodedEvent.decodeTime += System.nanoTime() - decodeStart;
                 buffer.clear();
             }
 
-            HttpRequest request = requestDecoder.getResult();
-            HttpResponse response = new HttpResponse(HTTP_VERSION, HttpStatusCode.OK);
-            List<MethodHandlerEntry> handlers;
-            boolean anyHandlersMatched = false;
+            request = requestDecoder.getResult();
+            if (decodedEvent != null) {
+                decodedEvent.end();
+                if (decodedEvent.shouldCommit()) {
+                    decodedEvent.method = String.valueOf(request.getMethod());
+                    decodedEvent.uri = String.valueOf(request.getUri());
+                    decodedEvent.bodySize = (request.getBody() == null) ? 0 : request.getBody().limit();
+                    decodedEvent.commit();
+                }
+            }
 
-            request.setRequesterAddress(client.getRemoteAddress());
+            response = new HttpResponse(HTTP_VERSION, HttpStatusCode.OK);
+            response.setBufferPool(streamBuffers);
+            request.setRequesterAddress(remoteAddress);
             response.getHeaders().put("Server", SERVER_NAME);
 
-            switch (request.getMethod()) {
-                case GET:
-                    handlers = getHandlers;
-                    break;
-                case POST:
-                    handlers = postHandlers;
-                    break;
-                case PUT:
-                    handlers = putHandlers;
-                    break;
-                case DELETE:
-                    handlers = deleteHandlers;
-                    break;
-                default:
-                    handlers = null;
-            }
-
-            if (handlers != null) {
-                for (MethodHandlerEntry e : handlers) {
-                    Matcher matcher = e.getUrlPattern().matcher(request.getUri().toString());
-                    if (matcher.matches()) {
-                        try {
-                            anyHandlersMatched = true;
-                            e.getHandler().handle(request, response);
-                            break;
-                        } catch (Exception ex) {
-                            response.setStatusCode(HttpStatusCode.INTERNAL_ERROR);
-                            LOGGER.log(Level.WARNING, e.toString());
-                        }
+            if (requestDecoder.isRejected()) {
+                // The rest of a rejected body is never read, so the connection cannot be reused.
+                response.setStatusCode(requestDecoder.getRejectionStatus());
+                if (response.getStatusCode() == HttpStatusCode.TOO_MANY_REQUESTS)
+                    response.getHeaders().put("Retry-After", RETRY_AFTER);
+                else if (response.getStatusCode() == HttpStatusCode.INTERNAL_ERROR)
+                    LOGGER.log(Level.WARNING, "Failed to store the body of " + request.getUri());
+                else LOGGER.log(Level.FINE, "Rejected request " + request.getUri() + ": " + response.getStatusCode());
+                response.getHeaders().put("Connection", "close");
+            } else {
+                HttpEvents.HandlerExecuted handlerEvent = HttpEvents.beginHandlerExecuted();
+                long routeStart = (handlerEvent != null) ? System.nanoTime() : 0;
+                HttpFilterChain chain = routes.get().route(request.getMethod(), request.getUri().toString());
+                if (handlerEvent != null) handlerEvent.routingTime = System.nanoTime() - routeStart;
+                try {
+                    chain.proceed(request, response);
+                    if (response.getJsonWriter() != null) jsonEntity = response.getJsonWriter().finish();
+                } catch (Exception ex) {
+                    response.releaseJson();
+                    response.setStatusCode(HttpStatusCode.INTERNAL_ERROR);
+                    LOGGER.log(Level.WARNING, ex.toString());
+                }
+                if (handlerEvent != null) {
+                    handlerEvent.end();
+                    if (handlerEvent.shouldCommit()) {
+                        handlerEvent.method = String.valueOf(request.getMethod());
+                        handlerEvent.routePattern = chain.getRoutePattern();
+                        handlerEvent.status = response.getStatus();
+                        handlerEvent.commit();
                     }
                 }
             }
 
-            if (!anyHandlersMatched) {
-                response.setStatusCode(HttpStatusCode.NOT_FOUND);
+            ReadableByteChannel entityStream = response.getEntityStream();
+            long entityLength;
+            if (entityStream != null) {
+                entityLength = response.getEntityStreamLength();
+            } else if (jsonEntity != null) {
+                entityLength = response.getJsonWriter().length();
+                response.setContentLength(entityLength);
+            } else {
+                entityLength = response.getEntity().limit();
             }
 
-            client.write(HttpResponse.output(response)).get(SEND_TIMEOUT, TimeUnit.SECONDS);
-            client.close();
+            if (!requestDecoder.isRejected() && "keep-alive".equalsIgnoreCase(request.getHeaders().get("Connection"))) {
+                keepAlive = !draining && entityLength >= 0;
+                response.getHeaders().put("Connection", keepAlive ? "keep-alive" : "close");
+                if (keepAlive) response.setContentLength(entityLength);
+            }
+
+            HttpEvents.ResponseWritten writtenEvent = HttpEvents.beginResponseWritten();
+            long encodeStart = (writtenEvent != null) ? System.nanoTime() : 0;
+            ByteBuffer output = HttpResponse.output(response);
+            if (writtenEvent != null) writtenEvent.encodeTime = System.nanoTime() - encodeStart;
+            long outputLength = output.remaining();
+            if (jsonEntity != null) {
+                ByteBuffer[] gathered = new ByteBuffer[jsonEntity.length + 1];
+                gathered[0] = output;
+                System.arraycopy(jsonEntity, 0, gathered, 1, jsonEntity.length);
+                client.write(gathered, SEND_TIMEOUT, TimeUnit.SECONDS);
+                outputLength += entityLength;
+            } else {
+                client.write(output, SEND_TIMEOUT, TimeUnit.SECONDS);
+            }
+            if (entityStream != null) outputLength += streamEntity(entityStream, client);
+            if (writtenEvent != null) {
+                writtenEvent.end();
+                if (writtenEvent.shouldCommit()) {
+                    writtenEvent.status = response.getStatus();
+                    writtenEvent.bytes = outputLength;
+                    writtenEvent.commit();
+                }
+            }
+
+            AccessLog log = accessLog;
+            if (log != null) log.log(request.getMethod(), request.getUri(), response.getStatus(), outputLength,
+                    System.nanoTime() - startTime, request.getRequesterAddress());
         } catch (TimeoutException e) {
+            keepAlive = false;
             LOGGER.log(Level.WARNING, e.toString());
         } catch (Exception e) {
+            keepAlive = false;
             LOGGER.log(Level.SEVERE, e.toString());
+        } finally {
+            if (response != null && response.getEntityStream() != null) closeQuietly(response.getEntityStream());
+            if (response != null) response.releaseJson();
+            requestDecoder.reset();
+            if (request != null) request.getParts().forEach(MultipartPart::delete);
+            inFlightRequests.decrementAndGet();
+            if (keepAlive) awaitNextRequest(client, buffer);
+            else closeConnection(client);
         }
     }
 
     /**
-     * A HttpMethodHandler and Compiled Regular Expression Tuple.
+     * Wait for the next request on a keep-alive connection without occupying a thread.
+     *
+     * @param client The connected client.
+     * @param buffer The receive buffer to read the next request into.
      */
-    private static class MethodHandlerEntry {
-        private Pattern urlPattern;
-        private HttpMethodHandler handler;
-
-        public MethodHandlerEntry(String urlPattern, HttpMethodHandler handler) {
-            this.urlPattern = Pattern.compile(urlPattern);
-            this.handler = handler;
+    private void awaitNextRequest(HttpConnection client, ByteBuffer buffer) {
+        idleConnections.add(client);
+        if (draining && idleConnections.remove(client)) {
+            closeConnection(client);
+            return;
         }
 
-        public MethodHandlerEntry(Pattern urlPattern, HttpMethodHandler handler) {
-            this.urlPattern = urlPattern;
-            this.handler = handler;
-        }
+        client.read(buffer, KEEP_ALIVE_TIMEOUT, TimeUnit.SECONDS, new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer result, ByteBuffer attachment) {
+                idleConnections.remove(client);
+                if (result < 0) {
+                    closeConnection(client);
+                    return;
+                }
+                try {
+                    executor.submit(() -> processing(client, attachment, false));
+                } catch (RejectedExecutionException e) {
+                    closeConnection(client);
+                }
+            }
 
-        public Pattern getUrlPattern() {
-            return urlPattern;
-        }
+            @Override
+            public void failed(Throwable exc, ByteBuffer attachment) {
+                idleConnections.remove(client);
+                closeConnection(client);
+            }
+        });
+    }
 
-        public void setUrlPattern(Pattern urlPattern) {
-            this.urlPattern = urlPattern;
+    /**
+     * Copy a streamed entity to the client through a pooled buffer.
+     *
+     * @return The number of bytes copied.
+     */
+    private long streamEntity(ReadableByteChannel entityStream, HttpConnection client) throws IOException, TimeoutException {
+        ByteBuffer streamBuffer = streamBuffers.acquire();
+        try {
+            long total = 0;
+            while (entityStream.read(streamBuffer) >= 0) {
+                streamBuffer.flip();
+                total += streamBuffer.remaining();
+                client.write(streamBuffer, SEND_TIMEOUT, TimeUnit.SECONDS);
+                streamBuffer.clear();
+            }
+            return total;
+        } finally {
+            streamBuffers.release(streamBuffer);
         }
+    }
 
-        public HttpMethodHandler getHandler() {
-            return handler;
-        }
+    private void closeConnection(HttpConnection client) {
+        closeQuietly(client);
+        openConnections.decrementAndGet();
+    }
 
-        public void setHandler(HttpMethodHandler handler) {
-            this.handler = handler;
+    private static void closeQuietly(Closeable client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e.toString());
         }
     }
 }
@@ -16,6 +16,10 @@ public enum HttpStatusCode {
     UNAUTHORIZED(401, "Unauthorized"),
     FORBIDDEN(403, "Forbidden"),
     NOT_FOUND(404, "Not Found"),
+    LENGTH_REQUIRED(411, "Length Required"),
+    PAYLOAD_TOO_LARGE(413, "Payload Too Large"),
+    UNSUPPORTED_MEDIA_TYPE(415, "Unsupported Media Type"),
+    TOO_MANY_REQUESTS(429, "Too Many Requests"),
     INTERNAL_ERROR(500, "Internal Server Error"),
     BAD_GATEWAY(502, "Bad Gateway"),
     SERVICE_UNAVAILABLE(503, "Service Unavailable");
@@ -35,4 +39,17 @@ public enum HttpStatusCode {
     public String getReasonPhrase() {
         return reasonPhrase;
     }
+
+    /**
+     * Find the status code of a numeric code.
+     *
+     * @param code The numeric code.
+     * @return The status code, or null if the code is not supported.
+     */
+    public static HttpStatusCode fromCode(int code) {
+        for (HttpStatusCode statusCode : values()) {
+            if (statusCode.code == code) return statusCode;
+        }
+        return null;
+    }
 }
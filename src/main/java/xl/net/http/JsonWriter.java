@@ -0,0 +1,303 @@
+package xl.net.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming JSON encoder writing UTF-8 directly into pooled buffers, the buffers are then written to the
+ * client as they are, without building a String or copying the payload.
+ * Separators are inserted automatically, e.g.
+ * {@code json.beginObject().name("id").value(42).name("tags").beginArray().value("a").endArray().endObject()}.
+ */
+public class JsonWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] MIN_LONG = String.valueOf(Long.MIN_VALUE).getBytes();
+
+    private final BufferPool pool;
+    private final List<ByteBuffer> buffers;
+    private final byte[] digits;
+    private ByteBuffer current;
+
+    private boolean[] hasElements;  //Indicate for every open container if a separator is needed before the next value.
+    private boolean[] isObject;
+    private int depth;
+    private boolean afterName;
+
+    /**
+     * The constructor.
+     *
+     * @param pool The pool the buffers are taken from.
+     */
+    public JsonWriter(BufferPool pool) {
+        this.pool = pool;
+        this.buffers = new ArrayList<>();
+        this.digits = new byte[20];
+        this.hasElements = new boolean[8];
+        this.isObject = new boolean[8];
+    }
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        writeByte('{');
+        push(true);
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        pop(true);
+        writeByte('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        writeByte('[');
+        push(false);
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        pop(false);
+        writeByte(']');
+        return this;
+    }
+
+    /**
+     * Write the name of the next member of the current object.
+     *
+     * @param name The member name.
+     * @return This writer.
+     */
+    public JsonWriter name(String name) {
+        if (depth == 0 || !isObject[depth - 1] || afterName)
+            throw new IllegalStateException("A member name is only allowed within an object.");
+        if (hasElements[depth - 1]) writeByte(',');
+        hasElements[depth - 1] = true;
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        if (value == null) return nullValue();
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    /**
+     * Write a number, NaN and infinities are not allowed by JSON.
+     * Integral values are written digit by digit, others are formatted by {@link Double#toString(double)}, which
+     * allocates a String: finding the shortest digits that read back as the same double is left to the JDK.
+     *
+     * @param value The number.
+     * @return This writer.
+     */
+    public JsonWriter value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            throw new IllegalArgumentException("JSON does not allow " + value + ".");
+        beforeValue();
+        if (value == (long) value && Math.abs(value) < 1e15) {
+            writeLong((long) value);
+        } else {
+            String text = Double.toString(value);
+            for (int i = 0; i < text.length(); i++) writeByte(text.charAt(i));
+        }
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonWriter nullValue() {
+        beforeValue();
+        writeBytes(NULL);
+        return this;
+    }
+
+    /**
+     * Get the encoded document, the buffers are flipped and stay owned by the writer until released.
+     *
+     * @return The buffers holding the document in order.
+     */
+    public ByteBuffer[] finish() {
+        if (depth != 0) throw new IllegalStateException("The JSON document has unclosed objects or arrays.");
+        ByteBuffer[] result = new ByteBuffer[buffers.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = buffers.get(i).duplicate();
+            result[i].flip();
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of bytes written so far.
+     *
+     * @return The length of the document.
+     */
+    public long length() {
+        long length = 0;
+        for (ByteBuffer buffer : buffers) length += buffer.position();
+        return length;
+    }
+
+    /**
+     * Give the buffers back to the pool, the writer and the buffers returned by finish() must not be used afterward.
+     */
+    public void release() {
+        for (ByteBuffer buffer : buffers) pool.release(buffer);
+        buffers.clear();
+        current = null;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth == 0) {
+            if (length() > 0) throw new IllegalStateException("A JSON document has a single top-level value.");
+            return;
+        }
+        if (isObject[depth - 1]) throw new IllegalStateException("A value within an object needs a member name first.");
+        if (hasElements[depth - 1]) writeByte(',');
+        hasElements[depth - 1] = true;
+    }
+
+    private void push(boolean object) {
+        if (depth == hasElements.length) {
+            hasElements = Arrays.copyOf(hasElements, depth * 2);
+            isObject = Arrays.copyOf(isObject, depth * 2);
+        }
+        hasElements[depth] = false;
+        isObject[depth] = object;
+        depth++;
+    }
+
+    private void pop(boolean object) {
+        if (depth == 0 || isObject[depth - 1] != object || afterName)
+            throw new IllegalStateException("Mismatched end of " + (object ? "object." : "array."));
+        depth--;
+    }
+
+    /**
+     * Write the digits of a number from the least significant one, without going through a String.
+     */
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        ensure(digits.length - position);
+        current.put(digits, position, digits.length - position);
+    }
+
+    /**
+     * Write a quoted string, encoding it as UTF-8 and escaping the quote, the backslash and the control characters.
+     */
+    private void writeString(String value) {
+        writeByte('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    writeByte('\\');
+                    writeByte(c);
+                } else if (c < 0x20) {
+                    writeControl(c);
+                } else {
+                    writeByte(c);
+                }
+            } else if (c < 0x800) {
+                ensure(2);
+                current.put((byte) (0xc0 | (c >> 6)));
+                current.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensure(4);
+                current.put((byte) (0xf0 | (codePoint >> 18)));
+                current.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                current.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                current.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                writeByte('?');
+            } else {
+                ensure(3);
+                current.put((byte) (0xe0 | (c >> 12)));
+                current.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                current.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeControl(char c) {
+        writeByte('\\');
+        switch (c) {
+            case '\n':
+                writeByte('n');
+                break;
+            case '\r':
+                writeByte('r');
+                break;
+            case '\t':
+                writeByte('t');
+                break;
+            case '\b':
+                writeByte('b');
+                break;
+            case '\f':
+                writeByte('f');
+                break;
+            default:
+                ensure(5);
+                current.put((byte) 'u').put((byte) '0').put((byte) '0');
+                current.put(HEX[c >> 4]).put(HEX[c & 0xf]);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensure(bytes.length);
+        current.put(bytes);
+    }
+
+    private void writeByte(int b) {
+        ensure(1);
+        current.put((byte) b);
+    }
+
+    /**
+     * Make sure the current buffer has room for a sequence that must not be split, taking a new buffer otherwise.
+     */
+    private void ensure(int length) {
+        if (current != null && current.remaining() >= length) return;
+        current = pool.acquire();
+        buffers.add(current);
+    }
+}
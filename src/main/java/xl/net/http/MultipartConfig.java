@@ -0,0 +1,56 @@
+package xl.net.http;
+
+import java.nio.file.Path;
+
+/**
+ * Limits and storage settings for decoding multipart/form-data request bodies.
+ */
+public class MultipartConfig {
+
+    private static final int DEFAULT_MEMORY_THRESHOLD = 16 * 1024;
+    private static final long DEFAULT_MAX_PART_SIZE = 16L * 1024 * 1024;
+    private static final long DEFAULT_MAX_TOTAL_SIZE = 64L * 1024 * 1024;
+
+    private final int memoryThreshold;
+    private final long maxPartSize;
+    private final long maxTotalSize;
+    private final Path tempDirectory;
+
+    /**
+     * Create a configuration with the default limits, spilling to the default temporary directory.
+     */
+    public MultipartConfig() {
+        this(DEFAULT_MEMORY_THRESHOLD, DEFAULT_MAX_PART_SIZE, DEFAULT_MAX_TOTAL_SIZE, null);
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param memoryThreshold The size in bytes above which a part is spilled to a temporary file.
+     * @param maxPartSize     The maximum size in bytes of the content of a single part.
+     * @param maxTotalSize    The maximum size in bytes of the content of all parts together.
+     * @param tempDirectory   The directory of the temporary files, or null for the default temporary directory.
+     */
+    public MultipartConfig(int memoryThreshold, long maxPartSize, long maxTotalSize, Path tempDirectory) {
+        this.memoryThreshold = memoryThreshold;
+        this.maxPartSize = maxPartSize;
+        this.maxTotalSize = maxTotalSize;
+        this.tempDirectory = tempDirectory;
+    }
+
+    public int getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    public long getMaxPartSize() {
+        return maxPartSize;
+    }
+
+    public long getMaxTotalSize() {
+        return maxTotalSize;
+    }
+
+    public Path getTempDirectory() {
+        return tempDirectory;
+    }
+}
@@ -0,0 +1,263 @@
+package xl.net.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental multipart/form-data parser that hold state for half-received body.
+ * The boundary is searched on the raw bytes with the Boyer-Moore-Horspool algorithm, the content of
+ * every part is streamed into a MultipartPart as soon as it cannot belong to a boundary.
+ */
+public class MultipartParser {
+
+    private static final byte CR = 13;
+    private static final byte LF = 10;
+    private static final byte DASH = '-';
+    private static final int MAX_HEADERS_SIZE = 8 * 1024;
+
+    private final MultipartConfig config;
+    private final byte[] delimiter;
+    private final int[] skip;
+    private final List<MultipartPart> parts;
+
+    private State state;
+    private MultipartPart part;
+    private byte[] work;
+    private int carry;
+    private long totalSize;
+
+    /**
+     * The constructor.
+     *
+     * @param boundary The boundary parameter of the Content-Type header.
+     * @param config   The limits and storage settings.
+     */
+    public MultipartParser(String boundary, MultipartConfig config) {
+        this.config = config;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.skip = new int[256];
+        Arrays.fill(skip, delimiter.length);
+        for (int i = 0; i < delimiter.length - 1; i++) skip[delimiter[i] & 0xff] = delimiter.length - 1 - i;
+        this.parts = new ArrayList<>();
+
+        // The first boundary is not preceded by a line break, pretend it is so that one delimiter fits all.
+        this.state = State.PREAMBLE;
+        this.work = new byte[delimiter.length + 4096];
+        this.work[0] = CR;
+        this.work[1] = LF;
+        this.carry = 2;
+    }
+
+    /**
+     * Extract the boundary parameter from a multipart/form-data Content-Type header.
+     *
+     * @param contentType The value of the Content-Type header.
+     * @return The boundary, or null if the content type is not multipart/form-data.
+     */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null) return null;
+        String[] elements = contentType.split(";");
+        if (!elements[0].trim().equalsIgnoreCase("multipart/form-data")) return null;
+
+        for (int i = 1; i < elements.length; i++) {
+            String[] param = elements[i].split("=", 2);
+            if (param.length == 2 && param[0].trim().equalsIgnoreCase("boundary")) {
+                String boundary = param[1].trim();
+                if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\""))
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                return boundary.isEmpty() ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parse a new received piece of the body, the buffer is fully consumed.
+     *
+     * @param buffer New received buffer.
+     */
+    public void parse(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (work.length < carry + length) work = Arrays.copyOf(work, carry + length);
+        buffer.get(work, carry, length);
+
+        try {
+            int end = carry + length;
+            int position = process(end);
+            carry = end - position;
+            System.arraycopy(work, position, work, 0, carry);
+        } catch (IOException e) {
+            discard();
+            throw new UnsupportedOperationException("Failed to store the multipart content.", e);
+        } catch (RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Complete the parsing once the whole body has been received.
+     *
+     * @return The parts of the body.
+     */
+    public List<MultipartPart> finish() {
+        if (state != State.EPILOGUE) {
+            discard();
+            throw new IllegalStateException("Multipart body ended before the closing boundary.");
+        }
+        return parts;
+    }
+
+    /**
+     * Delete the temporary files of every part parsed so far.
+     */
+    public void discard() {
+        for (MultipartPart p : parts) p.delete();
+    }
+
+    private int process(int end) throws IOException {
+        int position = 0;
+
+        while (position < end) {
+            switch (state) {
+                case PREAMBLE:
+                case BODY: {
+                    int found = indexOfDelimiter(position, end);
+                    if (found < 0) {
+                        int safe = Math.max(position, end - delimiter.length + 1);
+                        if (state == State.BODY) append(position, safe);
+                        return safe;
+                    }
+                    if (state == State.BODY) {
+                        append(position, found);
+                        part.finish();
+                    }
+                    position = found + delimiter.length;
+                    state = State.AFTER_DELIMITER;
+                    break;
+                }
+                case AFTER_DELIMITER: {
+                    while (position < end && (work[position] == ' ' || work[position] == '\t')) position++;
+                    if (end - position < 2) return position;
+                    if (work[position] == DASH && work[position + 1] == DASH) {
+                        state = State.EPILOGUE;
+                    } else if (work[position] == CR && work[position + 1] == LF) {
+                        state = State.HEADERS;
+                    } else {
+                        throw new IllegalStateException("Malformed multipart boundary.");
+                    }
+                    position += 2;
+                    break;
+                }
+                case HEADERS: {
+                    int found = indexOfHeadersEnd(position, end);
+                    if (found < 0) {
+                        if (end - position > MAX_HEADERS_SIZE)
+                            throw new LimitExceededException("Multipart part headers exceed the size limit.");
+                        return position;
+                    }
+                    part = createPart(new String(work, position, found - position, StandardCharsets.UTF_8));
+                    parts.add(part);
+                    position = (found == position) ? found + 2 : found + 4;
+                    state = State.BODY;
+                    break;
+                }
+                case EPILOGUE:
+                    return end;
+            }
+        }
+        return position;
+    }
+
+    private void append(int from, int to) throws IOException {
+        int length = to - from;
+        if (length == 0) return;
+        totalSize += length;
+        if (totalSize > config.getMaxTotalSize())
+            throw new LimitExceededException("Multipart body exceeds the size limit.");
+        part.write(work, from, length);
+    }
+
+    /**
+     * Boyer-Moore-Horspool search of the delimiter within work[from, to).
+     */
+    private int indexOfDelimiter(int from, int to) {
+        int last = delimiter.length - 1;
+        int i = from;
+        while (i + last < to) {
+            int j = last;
+            while (work[i + j] == delimiter[j]) {
+                if (j == 0) return i;
+                j--;
+            }
+            i += skip[work[i + last] & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Find the blank line ending the part headers, a part without any header starts with the blank line itself.
+     */
+    private int indexOfHeadersEnd(int from, int to) {
+        if (to - from >= 2 && work[from] == CR && work[from + 1] == LF) return from;
+        for (int i = from; i + 3 < to; i++) {
+            if (work[i] == CR && work[i + 1] == LF && work[i + 2] == CR && work[i + 3] == LF) return i;
+        }
+        return -1;
+    }
+
+    private MultipartPart createPart(String headerText) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String line : headerText.split("\r\n")) {
+            String[] headerElements = line.split(":", 2);
+            if (headerElements.length == 2) headers.put(headerElements[0].trim(), headerElements[1].trim());
+        }
+
+        String name = null;
+        String filename = null;
+        String disposition = headers.get("Content-Disposition");
+        if (disposition != null) {
+            for (String param : disposition.split(";")) {
+                String[] paramParts = param.split("=", 2);
+                if (paramParts.length != 2) continue;
+                String key = paramParts[0].trim();
+                String value = paramParts[1].trim();
+                if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\""))
+                    value = value.substring(1, value.length() - 1);
+                if (key.equalsIgnoreCase("name")) name = value;
+                else if (key.equalsIgnoreCase("filename")) filename = value;
+            }
+        }
+
+        return new MultipartPart(headers, name, filename, headers.get("Content-Type"), config);
+    }
+
+    /**
+     * The state of parser, the parser expects different upcoming content in different state.
+     */
+    private enum State {
+        PREAMBLE,        //The parser is skipping the content before the first boundary.
+        AFTER_DELIMITER, //The parser is expecting a line break, or '--' for the closing boundary.
+        HEADERS,         //The parser is expecting the headers of a part.
+        BODY,            //The parser is expecting the content of a part.
+        EPILOGUE;        //The closing boundary is detected, the remaining content is ignored.
+    }
+
+    /**
+     * Thrown when a multipart body exceeds the configured limits, as opposed to a malformed body.
+     */
+    public static class LimitExceededException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+}
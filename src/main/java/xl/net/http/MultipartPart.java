@@ -0,0 +1,153 @@
+package xl.net.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A part of a multipart/form-data request body.
+ * Small parts are kept in memory, larger ones are spilled to a temporary file that is deleted
+ * once the request has been responded.
+ * (Getters in this class is not commented as they are self-explain.)
+ */
+public class MultipartPart {
+
+    private static final Logger LOGGER = Logger.getLogger(MultipartPart.class.toString());
+
+    private static final int INITIAL_CAPACITY = 512;
+
+    private final String name;
+    private final String filename;
+    private final String contentType;
+    private final Map<String, String> headers;
+    private final MultipartConfig config;
+    private byte[] memory;
+    private Path file;
+    private FileChannel channel;
+    private long size;
+
+    MultipartPart(Map<String, String> headers, String name, String filename, String contentType, MultipartConfig config) {
+        this.headers = headers;
+        this.name = name;
+        this.filename = filename;
+        this.contentType = contentType;
+        this.config = config;
+        this.memory = new byte[0];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Open a stream over the content of the part.
+     *
+     * @return The stream, to be closed by the caller.
+     * @throws IOException The temporary file cannot be opened.
+     */
+    public InputStream getInputStream() throws IOException {
+        if (isInMemory()) return new ByteArrayInputStream(memory, 0, (int) size);
+        return Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    /**
+     * Decode the content of the part as UTF-8 text, only available for parts kept in memory.
+     *
+     * @return The text content.
+     */
+    public String getString() {
+        if (!isInMemory()) throw new IllegalStateException("The part has been spilled to a file.");
+        return new String(memory, 0, (int) size, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Delete the temporary file of the part if it has been spilled.
+     */
+    public void delete() {
+        try {
+            if (channel != null) channel.close();
+            if (file != null) Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e.toString());
+        }
+    }
+
+    /**
+     * Append a piece of content, spilling to a temporary file once the memory threshold is crossed.
+     */
+    void write(byte[] data, int offset, int length) throws IOException {
+        if (size + length > config.getMaxPartSize())
+            throw new MultipartParser.LimitExceededException("Multipart part '" + name + "' exceeds the size limit.");
+
+        if (isInMemory() && size + length > config.getMemoryThreshold()) spill();
+
+        if (isInMemory()) {
+            if (size + length > memory.length) {
+                int capacity = (int) Math.min(Math.max(Math.max(memory.length * 2, INITIAL_CAPACITY), size + length),
+                        config.getMemoryThreshold());
+                memory = Arrays.copyOf(memory, capacity);
+            }
+            System.arraycopy(data, offset, memory, (int) size, length);
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+        size += length;
+    }
+
+    /**
+     * Complete the part, no more content is appended afterward.
+     */
+    void finish() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void spill() throws IOException {
+        Path directory = config.getTempDirectory();
+        file = (directory == null) ? Files.createTempFile("multipart-", ".part")
+                : Files.createTempFile(directory, "multipart-", ".part");
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+
+        ByteBuffer buffer = ByteBuffer.wrap(memory, 0, (int) size);
+        while (buffer.hasRemaining()) channel.write(buffer);
+        memory = null;
+    }
+}
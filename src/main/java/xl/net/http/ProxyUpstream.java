@@ -0,0 +1,137 @@
+package xl.net.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A backend of the reverse proxy with its pool of idle keep-alive connections.
+ */
+final class ProxyUpstream {
+
+    private static final Logger LOGGER = Logger.getLogger(ProxyUpstream.class.toString());
+
+    private final InetSocketAddress address;
+    private final int maxIdleConnections;
+    private final long maxIdleNanos;
+    private final ConcurrentLinkedDeque<IdleConnection> idleConnections;
+    private final AtomicInteger idleCount;
+    private final AtomicInteger outstanding;
+    private volatile boolean healthy;
+
+    ProxyUpstream(InetSocketAddress address, int maxIdleConnections, long maxIdleTime, TimeUnit unit) {
+        this.address = address;
+        this.maxIdleConnections = maxIdleConnections;
+        this.maxIdleNanos = unit.toNanos(maxIdleTime);
+        this.idleConnections = new ConcurrentLinkedDeque<>();
+        this.idleCount = new AtomicInteger();
+        this.outstanding = new AtomicInteger();
+        this.healthy = true;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    AtomicInteger getOutstanding() {
+        return outstanding;
+    }
+
+    boolean isHealthy() {
+        return healthy;
+    }
+
+    void setHealthy(boolean healthy) {
+        if (this.healthy != healthy) LOGGER.log(Level.INFO, address + (healthy ? " is healthy." : " is unhealthy."));
+        this.healthy = healthy;
+    }
+
+    /**
+     * Take the most recently used idle connection, discarding the ones idle for too long.
+     *
+     * @return The connection, or null if none is available.
+     */
+    HttpConnection acquireIdle() {
+        IdleConnection idle;
+        while ((idle = idleConnections.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            if (System.nanoTime() - idle.since < maxIdleNanos && idle.connection.isOpen()) return idle.connection;
+            discard(idle.connection);
+        }
+        return null;
+    }
+
+    /**
+     * Open a new connection to the backend.
+     *
+     * @param timeout The maximum time to wait for the connection to be established.
+     * @param unit    The unit of timeout.
+     * @return The connection.
+     */
+    HttpConnection connect(long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        AsynchronousSocketChannel channel = AsynchronousSocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(address).get(timeout, unit);
+            return new AsyncSocketConnection(channel);
+        } catch (InterruptedException e) {
+            channel.close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.toString());
+        } catch (ExecutionException e) {
+            channel.close();
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        } catch (IOException | TimeoutException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Give a connection whose response has been fully read back to the pool.
+     */
+    void release(HttpConnection connection) {
+        if (idleCount.incrementAndGet() > maxIdleConnections) {
+            idleCount.decrementAndGet();
+            discard(connection);
+            return;
+        }
+        idleConnections.offerFirst(new IdleConnection(connection, System.nanoTime()));
+    }
+
+    void discard(HttpConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e.toString());
+        }
+    }
+
+    void closeIdle() {
+        HttpConnection connection;
+        while ((connection = acquireIdle()) != null) discard(connection);
+    }
+
+    /**
+     * An idle connection and the time it was released.
+     */
+    private static final class IdleConnection {
+        private final HttpConnection connection;
+        private final long since;
+
+        private IdleConnection(HttpConnection connection, long since) {
+            this.connection = connection;
+            this.since = since;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package xl.net.http;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client rate limiter based on token buckets.
+ * Buckets are kept in a table split into stripes, every stripe holds a bounded number of buckets. A new client
+ * arriving at a full stripe makes it look at a few buckets, resuming where the previous look stopped: the idle
+ * ones are evicted, or else the one closest to being full again, so a flood of new clients cannot switch the
+ * limiter off and costs a bounded amount of work per client. The bound is checked before the insertion without
+ * a lock, so a stripe can exceed it by the number of new clients inserted at the same time. A bucket is a single
+ * timestamp updated by CAS (the time at which it will be full again), so admitting a known client never locks.
+ */
+public class RateLimiter {
+
+    private static final int STRIPES = 64;
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final long emissionInterval;
+    private final long burstWindow;
+    private final long idleNanos;
+    private final int maxEntriesPerStripe;
+    private final Stripe[] stripes;
+    private final LongAdder rejected;
+    private volatile String keyHeader;
+
+    /**
+     * The constructor.
+     *
+     * @param permitsPerSecond The sustained rate of requests allowed per client.
+     * @param burst            The number of requests a client can send at once after being idle.
+     * @param maxEntries       The maximum number of clients tracked at the same time.
+     * @param idleTimeout      The time after which the bucket of a silent client can be evicted.
+     * @param unit             The unit of idleTimeout.
+     */
+    public RateLimiter(double permitsPerSecond, int burst, int maxEntries, long idleTimeout, TimeUnit unit) {
+        this.emissionInterval = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstWindow = emissionInterval * Math.max(burst, 1);
+        this.idleNanos = unit.toNanos(idleTimeout);
+        this.maxEntriesPerStripe = Math.max(maxEntries / STRIPES, 1);
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+        this.rejected = new LongAdder();
+    }
+
+    /**
+     * Identify clients by a request header (e.g. an API key) instead of their address when the header is present.
+     * Requests are then checked once their headers are received instead of at accept.
+     * The header must be set by a trusted proxy in front of the server, overwriting any value sent by the client:
+     * a client free to choose the value gets a fresh bucket with every new value. Requests without the header
+     * are identified by their address.
+     *
+     * @param keyHeader The header name, or null to identify clients by address only.
+     */
+    public void setKeyHeader(String keyHeader) {
+        this.keyHeader = keyHeader;
+    }
+
+    public String getKeyHeader() {
+        return keyHeader;
+    }
+
+    /**
+     * Get the number of requests rejected so far.
+     *
+     * @return The number of rejected requests.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Take a token for a client identified by its address.
+     *
+     * @param address The address of the client, the port is ignored.
+     * @return Indicate if the request is admitted.
+     */
+    public boolean tryAcquire(SocketAddress address) {
+        return tryAcquire(keyOf(address));
+    }
+
+    /**
+     * Take a token for a request, identifying the client by the key header if present, or by its address.
+     *
+     * @param request The request, with its headers and requester address set.
+     * @return Indicate if the request is admitted.
+     */
+    public boolean tryAcquire(HttpRequest request) {
+        String key = (keyHeader == null) ? null : request.getHeaders().get(keyHeader);
+        return tryAcquire(key != null ? key : keyOf(request.getRequesterAddress()));
+    }
+
+    /**
+     * Take a token for a client.
+     *
+     * @param key The identity of the client.
+     * @return Indicate if the request is admitted.
+     */
+    public boolean tryAcquire(Object key) {
+        long now = System.nanoTime();
+        Stripe stripe = stripes[spread(key.hashCode()) & (STRIPES - 1)];
+        AtomicLong bucket = stripe.buckets.get(key);
+
+        if (bucket == null) {
+            if (stripe.size.get() >= maxEntriesPerStripe) stripe.evict(now, idleNanos);
+            AtomicLong created = new AtomicLong(now);
+            bucket = stripe.buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+                stripe.size.incrementAndGet();
+            }
+        }
+
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + emissionInterval;
+            if (next - now > burstWindow) {
+                rejected.increment();
+                return false;
+            }
+            if (bucket.compareAndSet(fullAt, next)) return true;
+        }
+    }
+
+    private static Object keyOf(SocketAddress address) {
+        if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null)
+            return ((InetSocketAddress) address).getAddress();
+        return address;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A stripe of the bucket table.
+     */
+    private static final class Stripe {
+        private final ConcurrentHashMap<Object, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private Iterator<Map.Entry<Object, AtomicLong>> cursor;
+
+        /**
+         * Look at the next few buckets and remove the ones that have been full for longer than the idle timeout,
+         * or else the one among them with the earliest full time, the one holding the least debt.
+         */
+        private synchronized void evict(long now, long idleNanos) {
+            Map.Entry<Object, AtomicLong> oldest = null;
+            boolean evicted = false;
+            for (int i = 0; i < EVICTION_SAMPLE; i++) {
+                if (cursor == null || !cursor.hasNext()) {
+                    //Start over, the iterator is weakly consistent and sees the buckets added since.
+                    cursor = buckets.entrySet().iterator();
+                    if (!cursor.hasNext()) break;
+                }
+                Map.Entry<Object, AtomicLong> entry = cursor.next();
+                if (now - entry.getValue().get() > idleNanos) {
+                    if (buckets.remove(entry.getKey(), entry.getValue())) {
+                        size.decrementAndGet();
+                        evicted = true;
+                    }
+                } else if (oldest == null || entry.getValue().get() - oldest.getValue().get() < 0) {
+                    oldest = entry;
+                }
+            }
+            //The sample is full of active clients, forget the one that would soonest be evicted as idle.
+            if (!evicted && oldest != null && buckets.remove(oldest.getKey(), oldest.getValue())) {
+                size.decrementAndGet();
+            }
+        }
+    }
+}
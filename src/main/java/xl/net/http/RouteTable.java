@@ -0,0 +1,130 @@
+package xl.net.http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable snapshot of the registered handlers and filters.
+ * Every modification returns a new table with the filter chains compiled, so readers never need a lock.
+ */
+final class RouteTable {
+
+    private static final MethodHandlerEntry[] NO_ENTRIES = new MethodHandlerEntry[0];
+
+    private final List<HttpFilter> filters;
+    private final Map<HttpMethod, MethodHandlerEntry[]> handlers;
+    private final HttpFilterChain notFoundChain;
+
+    private RouteTable(List<HttpFilter> filters, Map<HttpMethod, MethodHandlerEntry[]> handlers) {
+        this.filters = filters;
+        this.handlers = handlers;
+        this.notFoundChain = HttpFilterChain.compile(filters,
+                (request, response) -> response.setStatusCode(HttpStatusCode.NOT_FOUND));
+    }
+
+    /**
+     * Create a table without any handler or filter.
+     *
+     * @return The empty table.
+     */
+    public static RouteTable empty() {
+        return new RouteTable(Collections.emptyList(), new EnumMap<>(HttpMethod.class));
+    }
+
+    /**
+     * Find the chain responsible for a request, falling back to a chain that responds 404.
+     *
+     * @param method The HTTP method of the request.
+     * @param uri    The requested URI.
+     * @return The compiled chain.
+     */
+    public HttpFilterChain route(HttpMethod method, String uri) {
+        MethodHandlerEntry[] entries = handlers.get(method);
+        if (entries != null) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].getUrlPattern().matcher(uri).matches()) return entries[i].getChain();
+            }
+        }
+        return notFoundChain;
+    }
+
+    /**
+     * Copy the table with a handler appended to the handlers of a method.
+     */
+    public RouteTable withHandler(HttpMethod method, String urlPattern, HttpMethodHandler handler) {
+        Map<HttpMethod, MethodHandlerEntry[]> copy = new EnumMap<>(handlers);
+        MethodHandlerEntry[] entries = copy.getOrDefault(method, NO_ENTRIES);
+        entries = Arrays.copyOf(entries, entries.length + 1);
+        entries[entries.length - 1] = new MethodHandlerEntry(Pattern.compile(urlPattern), handler, filters);
+        copy.put(method, entries);
+        return new RouteTable(filters, copy);
+    }
+
+    /**
+     * Copy the table without the handlers registered on a method with the given pattern.
+     * The same table is returned if no such handler exists.
+     */
+    public RouteTable withoutHandler(HttpMethod method, String urlPattern) {
+        MethodHandlerEntry[] entries = handlers.getOrDefault(method, NO_ENTRIES);
+        List<MethodHandlerEntry> remaining = new ArrayList<>(entries.length);
+        for (MethodHandlerEntry e : entries) {
+            if (!e.getUrlPattern().pattern().equals(urlPattern)) remaining.add(e);
+        }
+        if (remaining.size() == entries.length) return this;
+
+        Map<HttpMethod, MethodHandlerEntry[]> copy = new EnumMap<>(handlers);
+        copy.put(method, remaining.toArray(NO_ENTRIES));
+        return new RouteTable(filters, copy);
+    }
+
+    /**
+     * Copy the table with a filter appended, recompiling the chain of every handler.
+     */
+    public RouteTable withFilter(HttpFilter filter) {
+        List<HttpFilter> newFilters = new ArrayList<>(filters);
+        newFilters.add(filter);
+        newFilters = Collections.unmodifiableList(newFilters);
+
+        Map<HttpMethod, MethodHandlerEntry[]> copy = new EnumMap<>(HttpMethod.class);
+        for (Map.Entry<HttpMethod, MethodHandlerEntry[]> entry : handlers.entrySet()) {
+            MethodHandlerEntry[] entries = entry.getValue().clone();
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = new MethodHandlerEntry(entries[i].getUrlPattern(), entries[i].getHandler(), newFilters);
+            }
+            copy.put(entry.getKey(), entries);
+        }
+        return new RouteTable(newFilters, copy);
+    }
+
+    /**
+     * A HttpMethodHandler, Compiled Regular Expression and Compiled Filter Chain Tuple.
+     */
+    private static final class MethodHandlerEntry {
+        private final Pattern urlPattern;
+        private final HttpMethodHandler handler;
+        private final HttpFilterChain chain;
+
+        public MethodHandlerEntry(Pattern urlPattern, HttpMethodHandler handler, List<HttpFilter> filters) {
+            this.urlPattern = urlPattern;
+            this.handler = handler;
+            this.chain = HttpFilterChain.compile(filters, handler, urlPattern.pattern());
+        }
+
+        public Pattern getUrlPattern() {
+            return urlPattern;
+        }
+
+        public HttpMethodHandler getHandler() {
+            return handler;
+        }
+
+        public HttpFilterChain getChain() {
+            return chain;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package xl.net.http;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded store of serialized session data kept off-heap.
+ * Sessions are identified by 128-bit random ids and spread over segments, every segment locks on its own.
+ * The data of a segment lives in a direct buffer arena filled by bump allocation, indexed by an open-addressing
+ * table made of primitive arrays, so a million sessions add a handful of arrays to the heap rather than millions
+ * of objects. Space left by removed or replaced sessions is reclaimed by compacting the arena when it is full,
+ * the arena grows up to its share of the memory cap, beyond which the sessions expiring soonest are evicted.
+ * Every read or write of a session extends its lifetime by the TTL.
+ */
+public class SessionStore {
+
+    private static final int SEGMENTS = 16;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_ARENA_SIZE = 64 * 1024;
+
+    private final long ttlNanos;
+    private final Segment[] segments;
+    private final SecureRandom random;
+
+    /**
+     * The constructor.
+     *
+     * @param maxMemory The maximum number of bytes of session data kept off-heap.
+     * @param ttl       The time after which a session neither read nor written expires.
+     * @param unit      The unit of ttl.
+     */
+    public SessionStore(long maxMemory, long ttl, TimeUnit unit) {
+        int segmentSize = (int) Math.min(Math.max(maxMemory / SEGMENTS, 1), Integer.MAX_VALUE);
+        this.ttlNanos = unit.toNanos(ttl);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(segmentSize);
+        this.random = new SecureRandom();
+    }
+
+    /**
+     * Store the data of a new session.
+     *
+     * @param data The serialized session data, consumed by the call.
+     * @return The id of the new session, 32 hexadecimal digits suitable for a cookie value.
+     */
+    public String create(ByteBuffer data) {
+        long high;
+        long low;
+        do {
+            high = random.nextLong();
+            low = random.nextLong();
+        } while (high == 0 && low == 0);
+
+        segmentOf(high).put(high, low, data, System.nanoTime(), ttlNanos, true);
+        return String.format("%016x%016x", high, low);
+    }
+
+    /**
+     * Get a copy of the data of a session.
+     *
+     * @param id The session id.
+     * @return The session data, or null if the session does not exist or has expired.
+     */
+    public ByteBuffer get(String id) {
+        if (!isValid(id)) return null;
+        long high = highOf(id);
+        return segmentOf(high).get(high, lowOf(id), System.nanoTime(), ttlNanos);
+    }
+
+    /**
+     * Replace the data of an existing session.
+     *
+     * @param id   The session id.
+     * @param data The serialized session data, consumed by the call.
+     * @return Indicate if the session exists, nothing is stored otherwise.
+     */
+    public boolean put(String id, ByteBuffer data) {
+        if (!isValid(id)) return false;
+        long high = highOf(id);
+        return segmentOf(high).put(high, lowOf(id), data, System.nanoTime(), ttlNanos, false);
+    }
+
+    /**
+     * Remove a session.
+     *
+     * @param id The session id.
+     * @return Indicate if the session existed.
+     */
+    public boolean remove(String id) {
+        if (!isValid(id)) return false;
+        long high = highOf(id);
+        return segmentOf(high).remove(high, lowOf(id));
+    }
+
+    /**
+     * Remove every expired session, expired sessions are otherwise removed when accessed or when space is needed.
+     *
+     * @return The number of sessions removed.
+     */
+    public int evictExpired() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Segment segment : segments) evicted += segment.evictExpired(now);
+        return evicted;
+    }
+
+    /**
+     * Get the number of sessions stored, including the expired ones not removed yet.
+     *
+     * @return The number of sessions.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) size += segment.size();
+        return size;
+    }
+
+    /**
+     * Get the off-heap memory reserved by the arenas.
+     *
+     * @return The number of bytes.
+     */
+    public long getMemoryUsed() {
+        long used = 0;
+        for (Segment segment : segments) used += segment.arenaSize();
+        return used;
+    }
+
+    private Segment segmentOf(long high) {
+        return segments[(int) (high >>> 60) & (SEGMENTS - 1)];
+    }
+
+    private static boolean isValid(String id) {
+        if (id == null || id.length() != 32) return false;
+        for (int i = 0; i < 32; i++) {
+            if (Character.digit(id.charAt(i), 16) < 0) return false;
+        }
+        return true;
+    }
+
+    private static long highOf(String id) {
+        return Long.parseUnsignedLong(id.substring(0, 16), 16);
+    }
+
+    private static long lowOf(String id) {
+        return Long.parseUnsignedLong(id.substring(16), 16);
+    }
+
+    /**
+     * A segment of the store: an arena of session data and the table indexing it.
+     * A slot whose id is all zeros is empty, deletion shifts the following slots back so no tombstone is needed.
+     */
+    private static final class Segment {
+        private final int maxArenaSize;
+        private ByteBuffer arena;
+        private byte[] scratch;
+        private int top;      //The end of the allocated space in the arena.
+        private int garbage;  //The bytes below top not belonging to any session.
+
+        private long[] highs;
+        private long[] lows;
+        private long[] expiries;
+        private int[] offsets;
+        private int[] lengths;
+        private int count;
+
+        private Segment(int maxArenaSize) {
+            this.maxArenaSize = maxArenaSize;
+            this.arena = ByteBuffer.allocateDirect(Math.min(INITIAL_ARENA_SIZE, maxArenaSize));
+            allocateTable(INITIAL_CAPACITY);
+        }
+
+        private synchronized ByteBuffer get(long high, long low, long now, long ttl) {
+            int slot = find(high, low);
+            if (slot < 0) return null;
+            if (expiries[slot] - now <= 0) {
+                delete(slot);
+                return null;
+            }
+
+            expiries[slot] = now + ttl;
+            ByteBuffer copy = ByteBuffer.allocate(lengths[slot]);
+            copy.put(arena.slice(offsets[slot], lengths[slot]));
+            copy.flip();
+            return copy;
+        }
+
+        private synchronized boolean put(long high, long low, ByteBuffer data, long now, long ttl, boolean create) {
+            int length = data.remaining();
+            if (length > maxArenaSize)
+                throw new IllegalArgumentException("Session data exceeds the memory share of a segment.");
+
+            int slot = find(high, low);
+            boolean live = slot >= 0 && expiries[slot] - now > 0;
+            if (slot >= 0) delete(slot);
+            if (!live && !create) return false;
+
+            int offset = allocate(length, now);
+            arena.put(offset, data, data.position(), length);
+            data.position(data.limit());
+            insert(high, low, offset, length, now + ttl);
+            return true;
+        }
+
+        private synchronized boolean remove(long high, long low) {
+            int slot = find(high, low);
+            if (slot < 0) return false;
+            delete(slot);
+            return true;
+        }
+
+        private synchronized int evictExpired(long now) {
+            int evicted = 0;
+            int i = 0;
+            while (i < highs.length) {
+                // The slot is checked again after a deletion as the following slots are shifted into it.
+                if (!isEmpty(i) && expiries[i] - now <= 0) {
+                    delete(i);
+                    evicted++;
+                } else {
+                    i++;
+                }
+            }
+            return evicted;
+        }
+
+        private synchronized int size() {
+            return count;
+        }
+
+        private synchronized int arenaSize() {
+            return arena.capacity();
+        }
+
+        /**
+         * Reserve space at the top of the arena, making room by evicting, compacting or growing the arena.
+         */
+        private int allocate(int length, long now) {
+            if (arena.capacity() - top < length) evictExpired(now);
+
+            while (arena.capacity() - top < length) {
+                if (garbage > 0 && (garbage >= top / 2 || arena.capacity() == maxArenaSize)) {
+                    compactInto(arena);
+                } else if (arena.capacity() < maxArenaSize) {
+                    int required = top - garbage + length;
+                    ByteBuffer grown = ByteBuffer.allocateDirect(
+                            (int) Math.min(maxArenaSize, Math.max(2L * arena.capacity(), required)));
+                    compactInto(grown);
+                    arena = grown;
+                } else {
+                    evictSoonest();
+                }
+            }
+
+            int offset = top;
+            top += length;
+            return offset;
+        }
+
+        /**
+         * Copy the data of every session to the bottom of the target arena in offset order, so that copying
+         * within the same arena only ever moves data downward.
+         */
+        private void compactInto(ByteBuffer target) {
+            long[] order = new long[count];
+            int n = 0;
+            for (int i = 0; i < highs.length; i++) {
+                if (!isEmpty(i)) order[n++] = ((long) offsets[i] << 32) | i;
+            }
+            Arrays.sort(order);
+
+            if (scratch == null) scratch = new byte[8 * 1024];
+            int position = 0;
+            for (long entry : order) {
+                int slot = (int) entry;
+                int from = offsets[slot];
+                int remaining = lengths[slot];
+                offsets[slot] = position;
+                while (remaining > 0) {
+                    int chunk = Math.min(remaining, scratch.length);
+                    arena.get(from, scratch, 0, chunk);
+                    target.put(position, scratch, 0, chunk);
+                    from += chunk;
+                    position += chunk;
+                    remaining -= chunk;
+                }
+            }
+            top = position;
+            garbage = 0;
+        }
+
+        private void evictSoonest() {
+            int soonest = -1;
+            for (int i = 0; i < highs.length; i++) {
+                if (!isEmpty(i) && (soonest < 0 || expiries[i] - expiries[soonest] < 0)) soonest = i;
+            }
+            delete(soonest);
+        }
+
+        private int find(long high, long low) {
+            int mask = highs.length - 1;
+            for (int i = slotOf(low, mask); !isEmpty(i); i = (i + 1) & mask) {
+                if (highs[i] == high && lows[i] == low) return i;
+            }
+            return -1;
+        }
+
+        private void insert(long high, long low, int offset, int length, long expiry) {
+            if ((count + 1) * 4L > highs.length * 3L) resize(highs.length * 2);
+
+            int mask = highs.length - 1;
+            int i = slotOf(low, mask);
+            while (!isEmpty(i)) i = (i + 1) & mask;
+            highs[i] = high;
+            lows[i] = low;
+            offsets[i] = offset;
+            lengths[i] = length;
+            expiries[i] = expiry;
+            count++;
+        }
+
+        /**
+         * Remove a slot, shifting back the following slots that cannot be found anymore past the hole.
+         */
+        private void delete(int slot) {
+            garbage += lengths[slot];
+            count--;
+
+            int mask = highs.length - 1;
+            int hole = slot;
+            for (int i = (slot + 1) & mask; !isEmpty(i); i = (i + 1) & mask) {
+                int home = slotOf(lows[i], mask);
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    highs[hole] = highs[i];
+                    lows[hole] = lows[i];
+                    offsets[hole] = offsets[i];
+                    lengths[hole] = lengths[i];
+                    expiries[hole] = expiries[i];
+                    hole = i;
+                }
+            }
+            highs[hole] = 0;
+            lows[hole] = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] oldHighs = highs;
+            long[] oldLows = lows;
+            long[] oldExpiries = expiries;
+            int[] oldOffsets = offsets;
+            int[] oldLengths = lengths;
+
+            allocateTable(capacity);
+            count = 0;
+            for (int i = 0; i < oldHighs.length; i++) {
+                if (oldHighs[i] != 0 || oldLows[i] != 0)
+                    insert(oldHighs[i], oldLows[i], oldOffsets[i], oldLengths[i], oldExpiries[i]);
+            }
+        }
+
+        private void allocateTable(int capacity) {
+            highs = new long[capacity];
+            lows = new long[capacity];
+            expiries = new long[capacity];
+            offsets = new int[capacity];
+            lengths = new int[capacity];
+        }
+
+        private boolean isEmpty(int slot) {
+            return highs[slot] == 0 && lows[slot] == 0;
+        }
+
+        private static int slotOf(long low, int mask) {
+            return (int) (low ^ (low >>> 32)) & mask;
+        }
+    }
+}
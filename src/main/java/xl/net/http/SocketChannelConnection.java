@@ -0,0 +1,153 @@
+package xl.net.http;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cleartext connection over a non-blocking SocketChannel, used for the listeners AsynchronousSocketChannel
+ * cannot serve such as Unix domain sockets.
+ * Blocking reads and writes wait on the Selector the ChannelPoller keeps for the calling thread so that they
+ * can time out, reads without a thread are handed to the ChannelPoller.
+ */
+class SocketChannelConnection implements HttpConnection {
+
+    private final SocketChannel channel;
+    private final ChannelPoller poller;
+    private final AtomicReference<PendingRead> pendingRead;
+
+    public SocketChannelConnection(SocketChannel channel, ChannelPoller poller) throws IOException {
+        this.channel = channel;
+        this.poller = poller;
+        this.pendingRead = new AtomicReference<>();
+        channel.configureBlocking(false);
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        if (!dst.hasRemaining()) return 0;
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int count;
+        while ((count = channel.read(dst)) == 0) await(SelectionKey.OP_READ, deadline);
+        return count;
+    }
+
+    @Override
+    public void read(ByteBuffer dst, long timeout, TimeUnit unit, CompletionHandler<Integer, ByteBuffer> handler) {
+        pendingRead.set(new PendingRead(dst, handler, System.nanoTime() + unit.toNanos(timeout)));
+        poller.register(this);
+    }
+
+    @Override
+    public void write(ByteBuffer src, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (src.hasRemaining()) {
+            if (channel.write(src) == 0) await(SelectionKey.OP_WRITE, deadline);
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer[] srcs, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (srcs.length > 0 && srcs[srcs.length - 1].hasRemaining()) {
+            if (channel.write(srcs) == 0) await(SelectionKey.OP_WRITE, deadline);
+        }
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() throws IOException {
+        return channel.getRemoteAddress();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Close the channel, failing the read waiting in the poller if any.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            pollFailed(new AsynchronousCloseException());
+        }
+    }
+
+    boolean isExpired(long now) {
+        PendingRead pending = pendingRead.get();
+        return pending != null && now - pending.deadline >= 0;
+    }
+
+    /**
+     * Complete the pending read once the poller saw the channel readable.
+     */
+    void pollReadable() {
+        PendingRead pending = pendingRead.getAndSet(null);
+        if (pending == null) return;
+        try {
+            pending.handler.completed(channel.read(pending.dst), pending.dst);
+        } catch (IOException e) {
+            pending.handler.failed(e, pending.dst);
+        }
+    }
+
+    void pollTimedOut() {
+        pollFailed(new InterruptedByTimeoutException());
+    }
+
+    void pollFailed(Throwable exc) {
+        PendingRead pending = pendingRead.getAndSet(null);
+        if (pending != null) pending.handler.failed(exc, pending.dst);
+    }
+
+    /**
+     * Wait on the selector of the calling thread until the channel is ready for the operation.
+     * The key is cancelled and flushed afterward so that the selector only holds the channel being waited on.
+     */
+    private void await(int operation, long deadline) throws IOException, TimeoutException {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) throw new TimeoutException("Timed out waiting for the client.");
+
+        Selector selector = poller.waitSelector();
+        SelectionKey key = channel.register(selector, operation);
+        try {
+            selector.select(remaining);
+        } finally {
+            key.cancel();
+            selector.selectNow();
+            selector.selectedKeys().clear();
+        }
+    }
+
+    /**
+     * A read waiting in the poller.
+     */
+    private static final class PendingRead {
+        private final ByteBuffer dst;
+        private final CompletionHandler<Integer, ByteBuffer> handler;
+        private final long deadline;
+
+        private PendingRead(ByteBuffer dst, CompletionHandler<Integer, ByteBuffer> handler, long deadline) {
+            this.dst = dst;
+            this.handler = handler;
+            this.deadline = deadline;
+        }
+    }
+}
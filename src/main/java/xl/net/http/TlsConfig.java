@@ -0,0 +1,104 @@
+package xl.net.http;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * TLS settings of a HttpServer serving HTTPS.
+ * The SSLContext holds the server certificate and the session cache that lets returning clients resume
+ * their session with an abbreviated handshake.
+ */
+public class TlsConfig {
+
+    private static final int DEFAULT_SESSION_CACHE_SIZE = 10000;
+    private static final int DEFAULT_SESSION_TIMEOUT = 3600;
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    private final SSLContext sslContext;
+    private String[] applicationProtocols;
+    private BiFunction<SSLEngine, List<String>, String> applicationProtocolSelector;
+    private final BufferPool packetBuffers;
+    private final BufferPool applicationBuffers;
+
+    /**
+     * Create a configuration with the default session cache size (10000) and timeout (1 hour).
+     *
+     * @param sslContext The initialized SSL context holding the server certificate.
+     */
+    public TlsConfig(SSLContext sslContext) {
+        this(sslContext, DEFAULT_SESSION_CACHE_SIZE, DEFAULT_SESSION_TIMEOUT);
+    }
+
+    /**
+     * The constructor.
+     *
+     * @param sslContext       The initialized SSL context holding the server certificate.
+     * @param sessionCacheSize The maximum number of sessions cached for resumption.
+     * @param sessionTimeout   The time in seconds a cached session can be resumed.
+     */
+    public TlsConfig(SSLContext sslContext, int sessionCacheSize, int sessionTimeout) {
+        this.sslContext = sslContext;
+
+        SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+        sessionContext.setSessionCacheSize(sessionCacheSize);
+        sessionContext.setSessionTimeout(sessionTimeout);
+
+        SSLSession session = sslContext.createSSLEngine().getSession();
+        this.packetBuffers = new BufferPool(session.getPacketBufferSize(), MAX_POOLED_BUFFERS, true);
+        this.applicationBuffers = new BufferPool(session.getApplicationBufferSize(), MAX_POOLED_BUFFERS, false);
+    }
+
+    /**
+     * Set the protocols offered through ALPN, in order of preference (e.g. "http/1.1").
+     *
+     * @param applicationProtocols The protocol names.
+     */
+    public void setApplicationProtocols(String... applicationProtocols) {
+        this.applicationProtocols = applicationProtocols;
+    }
+
+    /**
+     * Set a callback choosing the ALPN protocol from the ones offered by the client, overriding the
+     * protocols set by {@link #setApplicationProtocols(String...)}. Returning null rejects the handshake.
+     *
+     * @param applicationProtocolSelector The callback.
+     */
+    public void setApplicationProtocolSelector(BiFunction<SSLEngine, List<String>, String> applicationProtocolSelector) {
+        this.applicationProtocolSelector = applicationProtocolSelector;
+    }
+
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    BufferPool getPacketBuffers() {
+        return packetBuffers;
+    }
+
+    BufferPool getApplicationBuffers() {
+        return applicationBuffers;
+    }
+
+    /**
+     * Create the engine of a newly accepted connection.
+     *
+     * @return The engine in server mode.
+     */
+    SSLEngine createEngine() {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+
+        if (applicationProtocols != null) {
+            SSLParameters parameters = engine.getSSLParameters();
+            parameters.setApplicationProtocols(applicationProtocols);
+            engine.setSSLParameters(parameters);
+        }
+        if (applicationProtocolSelector != null) engine.setHandshakeApplicationProtocolSelector(applicationProtocolSelector);
+        return engine;
+    }
+}
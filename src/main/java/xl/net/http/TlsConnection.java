@@ -0,0 +1,250 @@
+package xl.net.http;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * TLS connection, encrypting and decrypting through an SSLEngine on top of another connection.
+ * The packet and application buffers are taken from the pools of the TlsConfig and given back on close,
+ * the handshake is driven by the first read or write.
+ */
+class TlsConnection implements HttpConnection {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final long CLOSE_TIMEOUT = 1;
+
+    private final HttpConnection transport;
+    private final SSLEngine engine;
+    private final BufferPool packetBuffers;
+    private final BufferPool applicationBuffers;
+
+    private ByteBuffer netIn;   //Received bytes not yet decrypted, in write mode.
+    private ByteBuffer appIn;   //Decrypted bytes not yet consumed, in write mode.
+    private boolean handshaken;
+    private boolean readPending;
+    private boolean closed;
+
+    public TlsConnection(HttpConnection transport, TlsConfig config) throws SSLException {
+        this.transport = transport;
+        this.engine = config.createEngine();
+        this.packetBuffers = config.getPacketBuffers();
+        this.applicationBuffers = config.getApplicationBuffers();
+        this.netIn = packetBuffers.acquire();
+        this.appIn = applicationBuffers.acquire();
+        this.engine.beginHandshake();
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        if (!handshaken) handshake(timeout, unit);
+
+        while (appIn.position() == 0) {
+            if (!unwrap(timeout, unit)) return -1;
+        }
+
+        appIn.flip();
+        int count = Math.min(appIn.remaining(), dst.remaining());
+        ByteBuffer slice = appIn.slice();
+        slice.limit(count);
+        dst.put(slice);
+        appIn.position(appIn.position() + count);
+        appIn.compact();
+        return count;
+    }
+
+    @Override
+    public void read(ByteBuffer dst, long timeout, TimeUnit unit, CompletionHandler<Integer, ByteBuffer> handler) {
+        if (appIn.position() > 0 || netIn.position() > 0) {
+            handler.completed(0, dst);
+            return;
+        }
+
+        synchronized (this) {
+            readPending = true;
+        }
+        transport.read(netIn, timeout, unit, new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer result, ByteBuffer attachment) {
+                if (readCompleted()) handler.completed(result < 0 ? -1 : 0, dst);
+                else handler.failed(new SSLException("Connection closed."), dst);
+            }
+
+            @Override
+            public void failed(Throwable exc, ByteBuffer attachment) {
+                readCompleted();
+                handler.failed(exc, dst);
+            }
+        });
+    }
+
+    @Override
+    public void write(ByteBuffer src, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        if (!handshaken) handshake(timeout, unit);
+
+        while (src.hasRemaining()) {
+            if (wrap(src, timeout, unit).getStatus() == SSLEngineResult.Status.CLOSED)
+                throw new SSLException("Connection closed.");
+        }
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() throws IOException {
+        return transport.getRemoteAddress();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return transport.isOpen();
+    }
+
+    /**
+     * Send close_notify on a best-effort basis, then close the transport.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+
+        try {
+            if (handshaken && !readPending) {
+                engine.closeOutbound();
+                while (!engine.isOutboundDone()) wrap(EMPTY, CLOSE_TIMEOUT, TimeUnit.SECONDS);
+            }
+        } catch (IOException | TimeoutException e) {
+            //The client is gone or does not care about close_notify.
+        } finally {
+            transport.close();
+            releaseBuffers();
+        }
+    }
+
+    /**
+     * Mark the pending read as completed, releasing the buffers if the connection was closed meanwhile.
+     *
+     * @return Indicate if the connection is still open.
+     */
+    private boolean readCompleted() {
+        synchronized (this) {
+            readPending = false;
+            if (!closed) return true;
+        }
+        releaseBuffers();
+        return false;
+    }
+
+    /**
+     * Give the buffers back to the pools, unless a pending transport read may still write into them.
+     */
+    private void releaseBuffers() {
+        synchronized (this) {
+            if (readPending || netIn == null) return;
+        }
+        packetBuffers.release(netIn);
+        applicationBuffers.release(appIn);
+        netIn = null;
+        appIn = null;
+    }
+
+    private void handshake(long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        HandshakeStatus status = engine.getHandshakeStatus();
+
+        while (status != HandshakeStatus.FINISHED && status != HandshakeStatus.NOT_HANDSHAKING) {
+            switch (status) {
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN:
+                    netIn.flip();
+                    SSLEngineResult result = engine.unwrap(netIn, appIn);
+                    netIn.compact();
+                    status = result.getHandshakeStatus();
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        if (transport.read(netIn, timeout, unit) < 0) throw new SSLException("Connection closed during handshake.");
+                    } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new SSLException("Connection closed during handshake.");
+                    }
+                    break;
+                case NEED_WRAP:
+                    status = wrap(EMPTY, timeout, unit).getHandshakeStatus();
+                    break;
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    status = engine.getHandshakeStatus();
+                    break;
+                default:
+                    throw new SSLException("Unexpected handshake status " + status + ".");
+            }
+        }
+        handshaken = true;
+    }
+
+    /**
+     * Decrypt the received bytes into appIn, receiving more bytes if a whole record is not available yet.
+     *
+     * @return Indicate if the connection is still open.
+     */
+    private boolean unwrap(long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        while (true) {
+            netIn.flip();
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            netIn.compact();
+
+            switch (result.getStatus()) {
+                case OK:
+                    HandshakeStatus status = result.getHandshakeStatus();
+                    if (status == HandshakeStatus.NEED_TASK) runDelegatedTasks();
+                    if (engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) wrap(EMPTY, timeout, unit);
+                    if (result.bytesProduced() > 0) return true;
+                    break;
+                case BUFFER_UNDERFLOW:
+                    if (!netIn.hasRemaining()) netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                    if (transport.read(netIn, timeout, unit) < 0) return false;
+                    break;
+                case BUFFER_OVERFLOW:
+                    appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                    break;
+                case CLOSED:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Encrypt from src into a pooled packet buffer and send it.
+     */
+    private SSLEngineResult wrap(ByteBuffer src, long timeout, TimeUnit unit) throws IOException, TimeoutException {
+        ByteBuffer netOut = packetBuffers.acquire();
+        try {
+            SSLEngineResult result = engine.wrap(src, netOut);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW)
+                throw new SSLException("Packet buffer is too small for the negotiated session.");
+            if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) runDelegatedTasks();
+
+            netOut.flip();
+            transport.write(netOut, timeout, unit);
+            return result;
+        } finally {
+            packetBuffers.release(netOut);
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) task.run();
+    }
+
+    private static ByteBuffer enlarge(ByteBuffer buffer, int capacity) {
+        ByteBuffer enlarged = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+        buffer.flip();
+        enlarged.put(buffer);
+        return enlarged;
+    }
+}
@@ -0,0 +1,83 @@
+import org.junit.Test;
+import xl.net.http.AccessLog;
+import xl.net.http.HttpMethod;
+import xl.net.http.HttpStatusCode;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access Log Test. (Helper functions are not commented.)
+ */
+public class AccessLogTest {
+
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("127.0.0.1", 40000);
+
+    private static boolean log(AccessLog accessLog, String uri) {
+        return accessLog.log(HttpMethod.GET, URI.create(uri), HttpStatusCode.OK.getCode(), 42,
+                TimeUnit.MICROSECONDS.toNanos(250), CLIENT);
+    }
+
+    /**
+     * Test records are written in publishing order once the log is closed.
+     * @throws Exception
+     */
+    @Test
+    public void testRecordsAreWritten() throws Exception {
+        Path file = Files.createTempDirectory("access-log").resolve("access.log");
+        AccessLog accessLog = new AccessLog(file);
+        for (int i = 0; i < 100; i++) assert log(accessLog, "/item/" + i);
+        accessLog.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assert lines.size() == 100;
+        assert lines.get(0).startsWith("/127.0.0.1:40000 - - [");
+        assert lines.get(0).endsWith("\"GET /item/0\" 200 42 250us");
+        assert lines.get(99).contains("/item/99");
+        assert accessLog.getDroppedCount() == 0;
+    }
+
+    /**
+     * Test records are dropped and counted once the ring buffer is full.
+     * @throws Exception
+     */
+    @Test
+    public void testOverflowIsDropped() throws Exception {
+        Path file = Files.createTempDirectory("access-log").resolve("access.log");
+        AccessLog accessLog = new AccessLog(file, 4, Long.MAX_VALUE, 0);
+        int accepted = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (log(accessLog, "/")) accepted++;
+        }
+        accessLog.close();
+
+        assert accessLog.getDroppedCount() == 100000 - accepted;
+        assert Files.readAllLines(file, StandardCharsets.UTF_8).size() == accepted;
+        assert !log(accessLog, "/");
+    }
+
+    /**
+     * Test the log file is rolled when it reaches the maximum size.
+     * @throws Exception
+     */
+    @Test
+    public void testRolling() throws Exception {
+        Path file = Files.createTempDirectory("access-log").resolve("access.log");
+        AccessLog accessLog = new AccessLog(file, 16, 200, 2);
+        for (int i = 0; i < 10; i++) {
+            assert log(accessLog, "/" + i);
+            Thread.sleep(20);
+        }
+        accessLog.close();
+
+        assert Files.exists(file.resolveSibling("access.log.1"));
+        assert Files.exists(file.resolveSibling("access.log.2"));
+        assert !Files.exists(file.resolveSibling("access.log.3"));
+        assert Files.size(file) <= 200;
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.Test;
+import xl.net.http.Cookie;
+import xl.net.http.HttpServer;
+import xl.net.http.SessionStore;
+
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static xl.net.http.TestHttp.HOST;
+import static xl.net.http.TestHttp.anyPort;
+import static xl.net.http.TestHttp.portOf;
+import static xl.net.http.TestHttp.readTextResponse;
+import static xl.net.http.TestHttp.url;
+import static xl.net.http.TestHttp.writeTextResponse;
+
+/**
+ * Cookie Session Test. (Helper functions are not commented.)
+ */
+public class CookieSessionTest {
+
+    /**
+     * Test cookies are parsed from the request and sent back with one Set-Cookie header each, keeping a session.
+     * @throws Exception
+     */
+    @Test
+    public void testCookieSession() throws Exception {
+        HttpServer sessionServer = new HttpServer(anyPort());
+        SessionStore sessions = new SessionStore(1024 * 1024, 1, TimeUnit.MINUTES);
+        sessionServer.handleGetOn("\\/session", (request, response) -> {
+            ByteBuffer data = sessions.get(request.getCookie("SID"));
+            if (data == null) {
+                Cookie sid = new Cookie("SID", sessions.create(ByteBuffer.wrap(request.getCookie("user").getBytes())));
+                sid.setPath("/");
+                sid.setHttpOnly(true);
+                response.addCookie(sid);
+                response.addCookie(new Cookie("theme", "plain"));
+                writeTextResponse(response, "Created");
+            } else {
+                writeTextResponse(response, "Welcome back " + StandardCharsets.UTF_8.decode(data));
+            }
+        });
+        sessionServer.start();
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url(sessionServer, "/session").openConnection();
+            connection.setRequestProperty("Cookie", "user=alice; lang=en");
+            assert readTextResponse(connection.getInputStream()).equals("Created");
+            List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+            assert setCookies.size() == 2 && setCookies.contains("theme=plain");
+            String sid = setCookies.stream().filter(c -> c.startsWith("SID=")).findFirst().get();
+            assert sid.endsWith("; Path=/; HttpOnly");
+
+            connection = (HttpURLConnection) url(sessionServer, "/session").openConnection();
+            connection.setRequestProperty("Cookie", sid.substring(0, sid.indexOf(';')) + "; theme=plain");
+            assert readTextResponse(connection.getInputStream()).equals("Welcome back alice");
+            assert connection.getHeaderField("Set-Cookie") == null;
+        } finally {
+            sessionServer.shutdown();
+        }
+    }
+
+    /**
+     * Test cookie values are read as sent, and repeated Cookie headers are read as separate lists.
+     * @throws Exception
+     */
+    @Test
+    public void testRawCookies() throws Exception {
+        HttpServer cookieServer = new HttpServer(anyPort());
+        cookieServer.handleGetOn("\\/cookies", (request, response) ->
+                writeTextResponse(response, request.getCookies().toString()));
+        cookieServer.start();
+
+        try (Socket socket = new Socket(HOST, portOf(cookieServer))) {
+            socket.getOutputStream().write(("GET /cookies HTTP/1.0\r\nCookie: token=a+b%3Bc; lang=en\r\n"
+                    + "Cookie: theme=plain\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            String text = readTextResponse(socket.getInputStream());
+            assert text.endsWith("{token=a+b%3Bc, lang=en, theme=plain}") : text;
+        } finally {
+            cookieServer.shutdown();
+        }
+    }
+}
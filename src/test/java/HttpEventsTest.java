@@ -0,0 +1,83 @@
+import jdk.jfr.Recording;
+import org.junit.Test;
+import xl.net.http.HttpEventAnalyzer;
+import xl.net.http.HttpServer;
+
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static xl.net.http.TestHttp.HOST;
+import static xl.net.http.TestHttp.anyPort;
+import static xl.net.http.TestHttp.portOf;
+import static xl.net.http.TestHttp.readTextResponse;
+import static xl.net.http.TestHttp.writeTextResponse;
+
+/**
+ * HTTP Events Test. (Helper functions are not commented.)
+ */
+public class HttpEventsTest {
+
+    private static final String[] EVENTS = {"ConnectionAccepted", "RequestDecoded", "HandlerExecuted", "ResponseWritten"};
+
+    /**
+     * Test the flight recorder events of a request are recorded and summarized per phase.
+     * @throws Exception
+     */
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+        Map<String, HttpEventAnalyzer.PhaseStatistics> phases = record(EVENTS);
+
+        for (String phase : new String[]{HttpEventAnalyzer.ACCEPT_QUEUE, HttpEventAnalyzer.RECEIVE, HttpEventAnalyzer.DECODE,
+                HttpEventAnalyzer.ROUTING, HttpEventAnalyzer.HANDLER, HttpEventAnalyzer.ENCODE, HttpEventAnalyzer.WRITE})
+            assert phases.containsKey(phase) : phase;
+        HttpEventAnalyzer.PhaseStatistics handler = phases.get("handler GET \\/.*");
+        assert handler != null && handler.getCount() == 1;
+        assert handler.getP50() <= handler.getP99() && handler.getP99() <= handler.getMax();
+    }
+
+    /**
+     * Test only the events enabled by the recording are recorded.
+     * @throws Exception
+     */
+    @Test
+    public void testSingleEventEnabled() throws Exception {
+        Map<String, HttpEventAnalyzer.PhaseStatistics> phases = record("ResponseWritten");
+
+        assert phases.containsKey(HttpEventAnalyzer.ENCODE) && phases.containsKey(HttpEventAnalyzer.WRITE);
+        assert phases.get(HttpEventAnalyzer.ENCODE).getMax() > 0;
+        for (String phase : new String[]{HttpEventAnalyzer.ACCEPT_QUEUE, HttpEventAnalyzer.RECEIVE,
+                HttpEventAnalyzer.DECODE, HttpEventAnalyzer.ROUTING, HttpEventAnalyzer.HANDLER})
+            assert !phases.containsKey(phase) : phase;
+    }
+
+    private Map<String, HttpEventAnalyzer.PhaseStatistics> record(String... events) throws Exception {
+        HttpServer tracedServer = new HttpServer(anyPort());
+        tracedServer.handleGetOn("\\/.*", (request, response) -> writeTextResponse(response, "Traced"));
+        tracedServer.start();
+
+        Path file = Files.createTempFile("http-server", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : EVENTS) recording.disable("xl.net.http." + name);
+            for (String name : events) recording.enable("xl.net.http." + name);
+            recording.start();
+            try (Socket socket = new Socket(HOST, portOf(tracedServer))) {
+                socket.getOutputStream().write("GET /traced?name=Trace HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                assert readTextResponse(socket.getInputStream()).startsWith("HTTP/1.0 200 OK");
+            }
+            recording.stop();
+            recording.dump(file);
+        } finally {
+            tracedServer.shutdown();
+        }
+
+        Map<String, HttpEventAnalyzer.PhaseStatistics> phases = new HashMap<>();
+        for (HttpEventAnalyzer.PhaseStatistics statistics : HttpEventAnalyzer.analyze(file))
+            phases.put(statistics.getPhase(), statistics);
+        Files.delete(file);
+        return phases;
+    }
+}
@@ -0,0 +1,148 @@
+import org.junit.Test;
+import xl.net.http.HttpProxyHandler;
+import xl.net.http.HttpServer;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static xl.net.http.TestHttp.HOST;
+import static xl.net.http.TestHttp.anyPort;
+import static xl.net.http.TestHttp.portOf;
+import static xl.net.http.TestHttp.readTextResponse;
+import static xl.net.http.TestHttp.url;
+import static xl.net.http.TestHttp.writeTextResponse;
+
+/**
+ * HTTP Proxy Handler Test. (Helper functions are not commented.)
+ */
+public class HttpProxyHandlerTest {
+
+    /**
+     * Test the reverse proxy balancing over pooled connections and skipping an unhealthy backend.
+     * @throws Exception
+     */
+    @Test
+    public void testReverseProxy() throws Exception {
+        HttpServer[] backends = new HttpServer[2];
+        for (int i = 0; i < backends.length; i++) {
+            String name = "backend-" + i;
+            backends[i] = new HttpServer(anyPort());
+            backends[i].handleGetOn("\\/.*", (request, response) -> {
+                if (request.getUri().getPath().equals("/teapot")) response.setStatus(418, "I'm a teapot");
+                writeTextResponse(response, name + " " + request.getUri() + "?" + request.getQueryString());
+            });
+            backends[i].handlePostOn("\\/.*", (request, response) ->
+                    writeTextResponse(response, name + " " + StandardCharsets.UTF_8.decode(request.getBody())));
+            backends[i].start();
+        }
+
+        HttpProxyHandler proxyHandler = new HttpProxyHandler(Arrays.asList(
+                new InetSocketAddress(HOST, portOf(backends[0])), new InetSocketAddress(HOST, portOf(backends[1]))),
+                HttpProxyHandler.LoadBalancing.ROUND_ROBIN);
+        HttpServer proxy = new HttpServer(anyPort());
+        proxy.handleGetOn("\\/.*", proxyHandler);
+        proxy.handlePostOn("\\/.*", proxyHandler);
+        proxy.start();
+
+        try {
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < 6; i++) {
+                HttpURLConnection connection = (HttpURLConnection) url(proxy, "/echo?name=Ping").openConnection();
+                String text = readTextResponse(connection.getInputStream());
+                assert text.endsWith(" /echo?name=Ping") : text;
+                seen.add(text.substring(0, text.indexOf(' ')));
+            }
+            assert seen.size() == 2;
+            assert backends[0].getOpenConnectionCount() == 1;
+            assert backends[1].getOpenConnectionCount() == 1;
+
+            HttpURLConnection connection = (HttpURLConnection) url(proxy, "/").openConnection();
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write("payload".getBytes(StandardCharsets.UTF_8));
+            }
+            assert readTextResponse(connection.getInputStream()).endsWith(" payload");
+
+            connection = (HttpURLConnection) url(proxy, "/teapot").openConnection();
+            assert connection.getResponseCode() == 418;
+            assert connection.getResponseMessage().equals("I'm a teapot");
+            assert readTextResponse(connection.getErrorStream()).contains(" /teapot");
+
+            connection = (HttpURLConnection) url(proxy, "/").openConnection();
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=xyz");
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write("--xyz\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nb\r\n--xyz--\r\n"
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            assert connection.getResponseCode() == 415;
+
+            proxyHandler.enableHealthCheck("/health", 50, TimeUnit.MILLISECONDS);
+            backends[1].shutdown();
+            Thread.sleep(300);
+            for (int i = 0; i < 4; i++) {
+                connection = (HttpURLConnection) url(proxy, "/").openConnection();
+                assert readTextResponse(connection.getInputStream()).startsWith("backend-0 ");
+            }
+        } finally {
+            proxy.shutdown();
+            proxyHandler.close();
+            for (HttpServer backend : backends) backend.shutdown();
+        }
+    }
+
+    /**
+     * Test the proxy forwards the headers as the client sent them and refuses a header with a line break.
+     * @throws Exception
+     */
+    @Test
+    public void testProxyHeaders() throws Exception {
+        HttpServer backend = new HttpServer(anyPort());
+        backend.handleGetOn("\\/.*", (request, response) -> {
+            Map<String, List<String>> headers = request.getRawHeaders();
+            writeTextResponse(response, headers.get("X-Foo") + " " + headers.get("Authorization")
+                    + " injected=" + headers.containsKey("X-Injected") + " end");
+        });
+        backend.start();
+
+        HttpProxyHandler proxyHandler = new HttpProxyHandler(
+                Collections.singletonList(new InetSocketAddress(HOST, portOf(backend))),
+                HttpProxyHandler.LoadBalancing.ROUND_ROBIN);
+        HttpServer proxy = new HttpServer(anyPort());
+        proxy.handleGetOn("\\/.*", proxyHandler);
+        proxy.start();
+
+        try {
+            String text = exchange(proxy, "GET / HTTP/1.0\r\nX-Foo: a%0D%0AX-Injected: b\r\nX-Foo: second\r\n"
+                    + "Authorization: Basic YWJj+ZGVm\r\n\r\n", " end");
+            assert text.endsWith("[a%0D%0AX-Injected: b, second] [Basic YWJj+ZGVm] injected=false end") : text;
+
+            text = exchange(proxy, "GET / HTTP/1.0\r\nX-Foo: a\nX-Injected: b\r\n\r\n", "\r\n\r\n");
+            assert text.startsWith("HTTP/1.0 400 ") : text;
+        } finally {
+            proxy.shutdown();
+            proxyHandler.close();
+            backend.shutdown();
+        }
+    }
+
+    private String exchange(HttpServer server, String request, String ending) throws Exception {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(HOST, portOf(server)))) {
+            channel.write(ByteBuffer.wrap(request.getBytes(StandardCharsets.UTF_8)));
+            return readTextResponse(channel, ending);
+        }
+    }
+}
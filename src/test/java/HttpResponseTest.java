@@ -0,0 +1,93 @@
+import org.junit.Test;
+import xl.net.http.Cookie;
+import xl.net.http.HttpResponse;
+import xl.net.http.HttpStatusCode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP Response Test. (Helper functions are not commented.)
+ */
+public class HttpResponseTest {
+
+    private static String output(HttpResponse response) {
+        return StandardCharsets.UTF_8.decode(HttpResponse.output(response)).toString();
+    }
+
+    /**
+     * Test the head is encoded with the Date and Content-Length headers, followed by the entity.
+     * @throws Exception
+     */
+    @Test
+    public void testOutput() throws Exception {
+        HttpResponse response = new HttpResponse("HTTP/1.0", HttpStatusCode.NOT_FOUND);
+        response.getHeaders().put("Connection", "close");
+        response.getHeaders().put("X-Name", "Jörg");
+        response.addCookie(new Cookie("theme", "plain"));
+        response.setEntity(ByteBuffer.wrap("Missing".getBytes(StandardCharsets.UTF_8)));
+        response.setContentLength(7);
+
+        String text = output(response);
+        assert text.startsWith("HTTP/1.0 404 Not Found\r\nConnection: close\r\nX-Name: Jörg\r\nDate: ");
+        assert text.matches("(?s).*\r\nDate: [A-Z][a-z]{2}, \\d{2} [A-Z][a-z]{2} \\d{4} \\d{2}:\\d{2}:\\d{2} GMT\r\n.*");
+        assert text.endsWith(" GMT\r\nContent-Length: 7\r\nSet-Cookie: theme=plain\r\n\r\nMissing");
+        assert response.getEntity().remaining() == 7;
+    }
+
+    /**
+     * Test the headers set by the handler take precedence over the generated ones.
+     * @throws Exception
+     */
+    @Test
+    public void testExplicitHeaders() throws Exception {
+        HttpResponse response = new HttpResponse("HTTP/1.1", HttpStatusCode.OK);
+        response.getHeaders().put("Date", "Thu, 01 Jan 1970 00:00:00 GMT");
+        response.getHeaders().put("Content-Length", "0");
+        response.setContentLength(1234567890123L);
+
+        assert output(response).equals("HTTP/1.1 200 OK\r\nDate: Thu, 01 Jan 1970 00:00:00 GMT\r\nContent-Length: 0\r\n\r\n");
+
+        response.getHeaders().remove("Content-Length");
+        assert output(response).endsWith("\r\nContent-Length: 1234567890123\r\n\r\n");
+
+        response.getHeaders().remove("Date");
+        response.getHeaders().put("date", "Thu, 01 Jan 1970 00:00:00 GMT");
+        response.getHeaders().put("content-length", "0");
+        assert output(response).equals("HTTP/1.1 200 OK\r\ndate: Thu, 01 Jan 1970 00:00:00 GMT\r\ncontent-length: 0\r\n\r\n");
+    }
+
+    /**
+     * Test a cookie refuses a name, a value or an attribute that would break out of its Set-Cookie header.
+     * @throws Exception
+     */
+    @Test
+    public void testCookieValidation() throws Exception {
+        Cookie cookie = new Cookie("SID", "\"a1b2\"");
+        cookie.setPath("/app");
+        cookie.setSameSite("Strict");
+        assert cookie.toSetCookieValue().equals("SID=\"a1b2\"; Path=/app; SameSite=Strict");
+
+        for (String[] pair : new String[][]{{"bad name", "v"}, {"", "v"}, {"n;", "v"}, {"n", "a\r\nX-Injected: 1"},
+                {"n", "a; Domain=evil"}, {"n", "a b"}, {"n", null}}) {
+            try {
+                new Cookie(pair[0], pair[1]);
+                assert false : pair[0] + "=" + pair[1];
+            } catch (IllegalArgumentException e) {
+                assert true;
+            }
+        }
+        try {
+            cookie.setPath("/\r\nX-Injected: 1");
+            assert false;
+        } catch (IllegalArgumentException e) {
+            assert cookie.getPath().equals("/app");
+        }
+        try {
+            cookie.setDomain("example.com; Secure");
+            assert false;
+        } catch (IllegalArgumentException e) {
+            assert cookie.getDomain() == null;
+        }
+    }
+}
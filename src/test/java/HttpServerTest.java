@@ -1,18 +1,31 @@
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import xl.net.http.HttpFilter;
+import xl.net.http.HttpMethod;
 import xl.net.http.HttpRequest;
 import xl.net.http.HttpResponse;
 import xl.net.http.HttpServer;
+import xl.net.http.HttpStatusCode;
+import xl.net.http.RateLimiter;
 
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+import static xl.net.http.TestHttp.HOST;
+import static xl.net.http.TestHttp.anyPort;
+import static xl.net.http.TestHttp.portOf;
+import static xl.net.http.TestHttp.readTextResponse;
+import static xl.net.http.TestHttp.url;
+import static xl.net.http.TestHttp.writeTextResponse;
 
 /**
  * HTTP Server Test. (Helper functions are not commented.)
@@ -32,6 +45,8 @@ public class HttpServerTest {
         server.handlePostOn("\\/.*", HttpServerTest::handleAllPost);
         server.handlePutOn("\\/.*", HttpServerTest::handleAllPut);
         server.handleDeleteOn("\\/.*", HttpServerTest::handleAllDelete);
+        server.addFilter(HttpFilter.before(HttpServerTest::rejectPrivate));
+        server.addFilter(HttpFilter.after((request, response) -> response.getHeaders().put("X-Filtered", "true")));
         server.start();
     }
 
@@ -101,22 +116,28 @@ public class HttpServerTest {
         return readTextResponse(connection.getInputStream());
     }
 
-    private static String readTextResponse(InputStream is) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-            return sb.toString();
+    private static HttpURLConnection open(String path) throws IOException {
+        URL url = new URL("http://127.0.0.1:9000" + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setDoInput(true);
+        connection.setRequestMethod("GET");
+        return connection;
+    }
+
+    private static boolean isAccepting(int port) {
+        try {
+            new Socket("127.0.0.1", port).close();
+            return true;
+        } catch (IOException e) {
+            return false;
         }
     }
 
-    private static void writeTextResponse(HttpResponse response, String content) {
-        ByteBuffer responseBody = ByteBuffer.wrap(content.getBytes());
-        response.getHeaders().put("Content-Type", "text/plain");
-        response.getHeaders().put("Content-Length", String.valueOf(responseBody.limit()));
-        response.setEntity(responseBody);
+    private static boolean rejectPrivate(HttpRequest request, HttpResponse response) {
+        if (!request.getUri().getPath().startsWith("/private")) return true;
+        response.setStatusCode(HttpStatusCode.FORBIDDEN);
+        writeTextResponse(response, "Forbidden");
+        return false;
     }
 
     private static void handleAllGet(HttpRequest request, HttpResponse response) {
@@ -218,4 +239,230 @@ public class HttpServerTest {
         String response = delete();
         assert response.equals("Hello, world! is deleted");
     }
+
+    /**
+     * Test a before filter short-circuiting the request.
+     * @throws Exception
+     */
+    @Test
+    public void testFilterShortCircuit() throws Exception {
+        HttpURLConnection connection = open("/private");
+        assert connection.getResponseCode() == 403;
+        assert readTextResponse(connection.getErrorStream()).equals("Forbidden");
+    }
+
+    /**
+     * Test an after filter decorating the response.
+     * @throws Exception
+     */
+    @Test
+    public void testFilterAfterHandler() throws Exception {
+        HttpURLConnection connection = open("/");
+        assert connection.getResponseCode() == 200;
+        assert "true".equals(connection.getHeaderField("X-Filtered"));
+    }
+
+    /**
+     * Test adding and removing a route while the server is running.
+     * @throws Exception
+     */
+    @Test
+    public void testRouteHotSwap() throws Exception {
+        HttpServer swapServer = new HttpServer(anyPort());
+        try {
+            swapServer.start();
+            HttpURLConnection connection = (HttpURLConnection) url(swapServer, "/swap").openConnection();
+            assert connection.getResponseCode() == 404;
+
+            swapServer.handleGetOn("\\/swap", (request, response) -> writeTextResponse(response, "Swapped"));
+            connection = (HttpURLConnection) url(swapServer, "/swap").openConnection();
+            assert connection.getResponseCode() == 200;
+            assert readTextResponse(connection.getInputStream()).equals("Swapped");
+
+            assert swapServer.removeHandler(HttpMethod.GET, "\\/swap");
+            assert !swapServer.removeHandler(HttpMethod.GET, "\\/swap");
+            connection = (HttpURLConnection) url(swapServer, "/swap").openConnection();
+            assert connection.getResponseCode() == 404;
+        } finally {
+            swapServer.shutdown();
+        }
+    }
+
+    /**
+     * Test draining a request in flight on a keep-alive connection during shutdown.
+     * @throws Exception
+     */
+    @Test
+    public void testGracefulDrain() throws Exception {
+        HttpServer drainServer = new HttpServer(anyPort());
+        CountDownLatch handlerEntered = new CountDownLatch(1);
+        CountDownLatch releaseHandler = new CountDownLatch(1);
+        drainServer.handleGetOn("\\/.*", (request, response) -> {
+            handlerEntered.countDown();
+            try {
+                releaseHandler.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writeTextResponse(response, "Drained");
+        });
+        drainServer.start();
+        int drainPort = portOf(drainServer);
+
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            Future<HttpURLConnection> pending = client.submit(() -> {
+                HttpURLConnection connection = (HttpURLConnection) url(drainServer, "/").openConnection();
+                connection.setRequestProperty("Connection", "keep-alive");
+                connection.getResponseCode();
+                return connection;
+            });
+            assert handlerEntered.await(5, TimeUnit.SECONDS);
+            assert drainServer.getInFlightRequestCount() == 1;
+
+            ExecutorService stopper = Executors.newSingleThreadExecutor();
+            Future<Integer> stopped = stopper.submit(() -> drainServer.shutdown(5, TimeUnit.SECONDS));
+            while (isAccepting(drainPort)) Thread.sleep(10);
+            releaseHandler.countDown();
+
+            HttpURLConnection connection = pending.get(5, TimeUnit.SECONDS);
+            assert connection.getResponseCode() == 200;
+            assert "close".equals(connection.getHeaderField("Connection"));
+            assert readTextResponse(connection.getInputStream()).equals("Drained");
+            assert stopped.get(10, TimeUnit.SECONDS) == 0;
+            stopper.shutdown();
+        } finally {
+            client.shutdown();
+            releaseHandler.countDown();
+        }
+    }
+
+    /**
+     * Test clients over their rate are rejected at accept, and keyed requests once their headers are received.
+     * @throws Exception
+     */
+    @Test
+    public void testRateLimit() throws Exception {
+        HttpServer limitedServer = new HttpServer(anyPort());
+        RateLimiter limiter = new RateLimiter(0.1, 2, 1024, 1, TimeUnit.MINUTES);
+        limitedServer.setRateLimiter(limiter);
+        limitedServer.handleGetOn("\\/.*", (request, response) -> writeTextResponse(response, "Limited"));
+        limitedServer.start();
+
+        try {
+            for (int i = 0; i < 2; i++) {
+                HttpURLConnection connection = (HttpURLConnection) url(limitedServer, "/").openConnection();
+                assert connection.getResponseCode() == 200;
+                assert readTextResponse(connection.getInputStream()).equals("Limited");
+            }
+            try (Socket socket = new Socket(HOST, portOf(limitedServer))) {
+                String head = readTextResponse(socket.getInputStream());
+                assert head.startsWith("HTTP/1.0 429 Too Many Requests") : head;
+                assert head.contains("Retry-After: 1");
+            }
+            assert limiter.getRejectedCount() == 1;
+
+            limiter.setKeyHeader("X-Api-Key");
+            for (int i = 0; i < 3; i++) {
+                HttpURLConnection connection = (HttpURLConnection) url(limitedServer, "/").openConnection();
+                connection.setRequestProperty("X-Api-Key", "tenant");
+                assert connection.getResponseCode() == (i < 2 ? 200 : 429);
+                if (i == 2) assert "1".equals(connection.getHeaderField("Retry-After"));
+            }
+            HttpURLConnection connection = (HttpURLConnection) url(limitedServer, "/").openConnection();
+            connection.setRequestProperty("X-Api-Key", "other-tenant");
+            assert connection.getResponseCode() == 200;
+        } finally {
+            limitedServer.shutdown();
+        }
+    }
+
+    /**
+     * Test a JSON entity spanning several pooled buffers is written with its Content-Length.
+     * @throws Exception
+     */
+    @Test
+    public void testJsonResponse() throws Exception {
+        HttpServer jsonServer = new HttpServer(anyPort());
+        jsonServer.handleGetOn("\\/json", (request, response) -> {
+            response.writeJson().beginObject().name("name").value(request.getUrlParams().get("name")).name("items").beginArray();
+            for (int i = 0; i < 5000; i++) response.writeJson().value(i);
+            response.writeJson().endArray().endObject();
+        });
+        jsonServer.start();
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url(jsonServer, "/json?name=J%C3%B6rg").openConnection();
+            assert connection.getResponseCode() == 200;
+            assert connection.getContentType().startsWith("application/json");
+            String text = new String(connection.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assert text.length() > 16 * 1024;
+            assert connection.getContentLengthLong() == text.getBytes(StandardCharsets.UTF_8).length;
+            assert text.startsWith("{\"name\":\"J\u00f6rg\",\"items\":[0,1,2,") && text.endsWith(",4999]}");
+        } finally {
+            jsonServer.shutdown();
+        }
+    }
+
+    /**
+     * Test a failing JSON handler gives back the Content-Type it replaced, and keeps one it set afterwards.
+     * @throws Exception
+     */
+    @Test
+    public void testJsonReleased() throws Exception {
+        HttpServer jsonServer = new HttpServer(anyPort());
+        jsonServer.handleGetOn("\\/plain", (request, response) -> {
+            response.getHeaders().put("Content-Type", "text/plain");
+            response.writeJson().beginObject();
+            throw new IllegalStateException("Failed");
+        });
+        jsonServer.handleGetOn("\\/problem", (request, response) -> {
+            response.writeJson().beginObject();
+            response.getHeaders().put("Content-Type", "application/problem+json");
+            throw new IllegalStateException("Failed");
+        });
+        jsonServer.start();
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url(jsonServer, "/plain").openConnection();
+            assert connection.getResponseCode() == 500;
+            assert "text/plain".equals(connection.getContentType());
+
+            connection = (HttpURLConnection) url(jsonServer, "/problem").openConnection();
+            assert connection.getResponseCode() == 500;
+            assert "application/problem+json".equals(connection.getContentType());
+        } finally {
+            jsonServer.shutdown();
+        }
+    }
+
+    /**
+     * Test POST request with a multipart/form-data body.
+     * @throws Exception
+     */
+    @Test
+    public void testPostMultipart() throws Exception {
+        String boundary = "PlainOldBoundary";
+        URL url = new URL("http://127.0.0.1:9000");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setDoInput(true);
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"name\"\r\n\r\n"
+                    + "Ping\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        assert readTextResponse(connection.getInputStream()).equals("Hello, Ping!");
+
+        try (Socket socket = new Socket("127.0.0.1", 9000)) {
+            socket.getOutputStream().write(("POST / HTTP/1.0\r\n"
+                    + "Content-Type: multipart/form-data; boundary=" + boundary + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            String head = readTextResponse(socket.getInputStream());
+            assert head.startsWith("HTTP/1.0 411 Length Required") && head.contains("Connection: close") : head;
+        }
+    }
 }
@@ -0,0 +1,86 @@
+import org.junit.Test;
+import xl.net.http.HttpServer;
+import xl.net.http.TestKeyStores;
+import xl.net.http.TlsConfig;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static xl.net.http.TestHttp.HOST;
+import static xl.net.http.TestHttp.anyPort;
+import static xl.net.http.TestHttp.portOf;
+import static xl.net.http.TestHttp.readTextResponse;
+import static xl.net.http.TestHttp.url;
+import static xl.net.http.TestHttp.writeTextResponse;
+
+/**
+ * HTTPS Server Test. (Helper functions are not commented.)
+ */
+public class HttpsServerTest {
+
+    /**
+     * Test requests over HTTPS with a self-signed certificate, including ALPN negotiation.
+     * @throws Exception
+     */
+    @Test
+    public void testHttps() throws Exception {
+        TlsConfig tlsConfig = new TlsConfig(TestKeyStores.serverContext());
+        tlsConfig.setApplicationProtocols("http/1.0");
+        HttpServer httpsServer = new HttpServer(anyPort(), tlsConfig);
+        httpsServer.handleGetOn("\\/.*", (request, response) ->
+                writeTextResponse(response, "Hello, " + request.getUrlParams().get("name") + "!"));
+        httpsServer.start();
+
+        try {
+            SSLContext clientContext = TestKeyStores.clientContext();
+            for (int i = 0; i < 3; i++) {
+                HttpsURLConnection connection = (HttpsURLConnection) url("https", httpsServer, "/?name=Tls").openConnection();
+                connection.setSSLSocketFactory(clientContext.getSocketFactory());
+                assert connection.getResponseCode() == 200;
+                assert readTextResponse(connection.getInputStream()).equals("Hello, Tls!");
+            }
+
+            try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(HOST, portOf(httpsServer))) {
+                SSLParameters parameters = socket.getSSLParameters();
+                parameters.setApplicationProtocols(new String[]{"h2", "http/1.0"});
+                socket.setSSLParameters(parameters);
+                socket.startHandshake();
+                assert "http/1.0".equals(socket.getApplicationProtocol());
+            }
+        } finally {
+            httpsServer.shutdown();
+        }
+    }
+
+    /**
+     * Test a returning client resumes its cached TLS session.
+     * @throws Exception
+     */
+    @Test
+    public void testHttpsSessionResumption() throws Exception {
+        HttpServer httpsServer = new HttpServer(anyPort(), new TlsConfig(TestKeyStores.serverContext()));
+        httpsServer.start();
+
+        try {
+            SSLContext clientContext = TestKeyStores.clientContext();
+            byte[][] sessionIds = new byte[2][];
+            for (int i = 0; i < 2; i++) {
+                try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(HOST, portOf(httpsServer))) {
+                    socket.setEnabledProtocols(new String[]{"TLSv1.2"});
+                    socket.startHandshake();
+                    sessionIds[i] = socket.getSession().getId();
+                    socket.getOutputStream().write("GET / HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    assert readTextResponse(socket.getInputStream()).startsWith("HTTP/1.0 404 Not Found");
+                }
+            }
+            assert sessionIds[0].length > 0;
+            assert Arrays.equals(sessionIds[0], sessionIds[1]);
+        } finally {
+            httpsServer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import org.junit.Test;
+import xl.net.http.BufferPool;
+import xl.net.http.JsonWriter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON Writer Test. (Helper functions are not commented.)
+ */
+public class JsonWriterTest {
+
+    private static String text(JsonWriter json) {
+        StringBuilder sb = new StringBuilder();
+        byte[] all = new byte[(int) json.length()];
+        int position = 0;
+        for (ByteBuffer buffer : json.finish()) {
+            int length = buffer.remaining();
+            buffer.get(all, position, length);
+            position += length;
+        }
+        return sb.append(new String(all, StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Test values, separators and nesting.
+     * @throws Exception
+     */
+    @Test
+    public void testDocument() throws Exception {
+        JsonWriter json = new JsonWriter(new BufferPool(1024, 4, false));
+        json.beginObject()
+                .name("id").value(42)
+                .name("min").value(Long.MIN_VALUE)
+                .name("ratio").value(0.25)
+                .name("whole").value(-3.0)
+                .name("ok").value(true)
+                .name("none").nullValue()
+                .name("tags").beginArray().value("a").beginArray().endArray().beginObject().endObject().endArray()
+                .endObject();
+        assert text(json).equals("{\"id\":42,\"min\":-9223372036854775808,\"ratio\":0.25,\"whole\":-3,\"ok\":true,"
+                + "\"none\":null,\"tags\":[\"a\",[],{}]}");
+        json.release();
+    }
+
+    /**
+     * Test string escaping and UTF-8 encoding, including surrogate pairs.
+     * @throws Exception
+     */
+    @Test
+    public void testStrings() throws Exception {
+        JsonWriter json = new JsonWriter(new BufferPool(1024, 4, false));
+        json.beginArray().value("quote\" back\\ line\n tab\t bell\u0007").value("café € 😀").endArray();
+        assert text(json).equals("[\"quote\\\" back\\\\ line\\n tab\\t bell\\u0007\",\"café € 😀\"]");
+    }
+
+    /**
+     * Test a document spanning many buffers, and misuse being rejected.
+     * @throws Exception
+     */
+    @Test
+    public void testManyBuffers() throws Exception {
+        JsonWriter json = new JsonWriter(new BufferPool(16, 4, true));
+        json.beginArray();
+        for (int i = 0; i < 100; i++) json.value("item-" + i);
+        json.endArray();
+        ByteBuffer[] buffers = json.finish();
+        assert buffers.length > 50;
+        String text = text(json);
+        assert text.startsWith("[\"item-0\",\"item-1\",") && text.endsWith(",\"item-99\"]");
+
+        try {
+            new JsonWriter(new BufferPool(16, 4, false)).beginObject().value(1);
+            assert false;
+        } catch (IllegalStateException e) {
+            assert e.getMessage().contains("member name");
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import org.junit.Test;
+import xl.net.http.HttpRequestDecoder;
+import xl.net.http.HttpStatusCode;
+import xl.net.http.MultipartConfig;
+import xl.net.http.MultipartParser;
+import xl.net.http.MultipartPart;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Multipart Parser Test. (Helper functions are not commented.)
+ */
+public class MultipartParserTest {
+
+    private static final String BOUNDARY = "----PlainOldBoundary7MA4YWxk";
+
+    private static byte[] body(byte[] fileContent) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(("preamble\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"name\"\r\n\r\n"
+                + "Ping\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"upload\"; filename=\"data.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        output.write(fileContent);
+        output.write(("\r\n--" + BOUNDARY + "--\r\nepilogue").getBytes(StandardCharsets.UTF_8));
+        return output.toByteArray();
+    }
+
+    private static byte[] fileContent(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) content[i] = (byte) ((i % 7 == 0) ? '\r' : (i % 11 == 0) ? '-' : i);
+        return content;
+    }
+
+    private static List<MultipartPart> parse(byte[] body, int chunkSize, MultipartConfig config) {
+        MultipartParser parser = new MultipartParser(BOUNDARY, config);
+        for (int i = 0; i < body.length; i += chunkSize) {
+            parser.parse(ByteBuffer.wrap(body, i, Math.min(chunkSize, body.length - i)));
+        }
+        return parser.finish();
+    }
+
+    private static HttpRequestDecoder decode(byte[] body, boolean withLength, MultipartConfig config) {
+        return decode(new HttpRequestDecoder(config), body, withLength);
+    }
+
+    private static HttpRequestDecoder decode(HttpRequestDecoder decoder, byte[] body, boolean withLength) {
+        String head = "POST /upload HTTP/1.1\r\n"
+                + "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+                + (withLength ? "Content-Length: " + body.length + "\r\n" : "") + "\r\n";
+        ByteBuffer buffer = ByteBuffer.allocate(head.length() + body.length);
+        buffer.put(head.getBytes(StandardCharsets.US_ASCII)).put(body).flip();
+        while (buffer.hasRemaining()) {
+            ByteBuffer chunk = buffer.slice();
+            chunk.limit(Math.min(chunk.remaining(), 1024));
+            buffer.position(buffer.position() + chunk.limit());
+            if (decoder.decode(chunk)) break;
+        }
+        return decoder;
+    }
+
+    private static byte[] readAll(MultipartPart part) throws IOException {
+        try (InputStream input = part.getInputStream()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) > 0) output.write(buffer, 0, read);
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Test parsing a body delivered in chunks of every size, including one byte at a time.
+     * @throws Exception
+     */
+    @Test
+    public void testChunkedParsing() throws Exception {
+        byte[] content = fileContent(300);
+        byte[] body = body(content);
+        for (int chunkSize : new int[]{1, 2, 3, 17, 64, body.length}) {
+            List<MultipartPart> parts = parse(body, chunkSize, new MultipartConfig());
+            assert parts.size() == 2;
+            assert parts.get(0).getName().equals("name");
+            assert parts.get(0).getString().equals("Ping");
+            assert parts.get(1).getFilename().equals("data.bin");
+            assert parts.get(1).getContentType().equals("application/octet-stream");
+            assert parts.get(1).isInMemory();
+            assert Arrays.equals(readAll(parts.get(1)), content);
+        }
+    }
+
+    /**
+     * Test a large part is spilled to a temporary file which is deleted afterward.
+     * @throws Exception
+     */
+    @Test
+    public void testSpillToFile() throws Exception {
+        byte[] content = fileContent(100000);
+        List<MultipartPart> parts = parse(body(content), 4096, new MultipartConfig(1024, 1 << 20, 1 << 20, null));
+        MultipartPart upload = parts.get(1);
+        assert !upload.isInMemory();
+        assert upload.getSize() == content.length;
+        assert Arrays.equals(readAll(upload), content);
+
+        upload.delete();
+        assert !Files.exists(upload.getFile());
+    }
+
+    /**
+     * Test the part size limit is enforced.
+     * @throws Exception
+     */
+    @Test
+    public void testPartSizeLimit() throws Exception {
+        try {
+            parse(body(fileContent(5000)), 4096, new MultipartConfig(1024, 4096, 1 << 20, null));
+            assert false;
+        } catch (IllegalStateException e) {
+            assert e.getMessage().contains("upload");
+        }
+    }
+
+    /**
+     * Test a body without the closing boundary is rejected.
+     * @throws Exception
+     */
+    @Test
+    public void testTruncatedBody() throws Exception {
+        byte[] body = body(fileContent(10));
+        try {
+            parse(Arrays.copyOf(body, body.length - 20), 4096, new MultipartConfig());
+            assert false;
+        } catch (IllegalStateException e) {
+            assert e.getMessage().contains("closing boundary");
+        }
+    }
+
+    /**
+     * Test the decoder answers multipart bodies it cannot accept with a client error instead of failing.
+     * @throws Exception
+     */
+    @Test
+    public void testDecoderRejection() throws Exception {
+        HttpRequestDecoder accepted = decode(body(fileContent(3000)), true, new MultipartConfig());
+        assert !accepted.isRejected();
+        assert accepted.getResult().getParts().size() == 2;
+        accepted.reset();
+
+        HttpRequestDecoder tooLarge = decode(body(fileContent(5000)), true, new MultipartConfig(1024, 4096, 1 << 20, null));
+        assert tooLarge.isRejected();
+        assert tooLarge.getRejectionStatus() == HttpStatusCode.PAYLOAD_TOO_LARGE;
+
+        byte[] truncated = body(fileContent(10));
+        truncated = Arrays.copyOf(truncated, truncated.length - 20);
+        HttpRequestDecoder malformed = decode(truncated, true, new MultipartConfig());
+        assert malformed.isRejected();
+        assert malformed.getRejectionStatus() == HttpStatusCode.BAD_REQUEST;
+
+        HttpRequestDecoder unknownLength = decode(body(fileContent(10)), false, new MultipartConfig());
+        assert unknownLength.isRejected();
+        assert unknownLength.getRejectionStatus() == HttpStatusCode.LENGTH_REQUIRED;
+
+        HttpRequestDecoder declaredTooLarge = new HttpRequestDecoder(new MultipartConfig(1024, 1 << 20, 100, null));
+        String head = "POST /upload HTTP/1.1\r\nContent-Type: multipart/form-data; boundary=" + BOUNDARY
+                + "\r\nContent-Length: 1000000\r\n\r\n";
+        assert declaredTooLarge.decode(ByteBuffer.wrap(head.getBytes(StandardCharsets.US_ASCII)));
+        assert declaredTooLarge.getRejectionStatus() == HttpStatusCode.PAYLOAD_TOO_LARGE;
+
+        MultipartConfig unwritable = new MultipartConfig(16, 1 << 20, 1 << 20, Files.createTempDirectory("gone"));
+        Files.delete(unwritable.getTempDirectory());
+        HttpRequestDecoder failedToStore = decode(body(fileContent(100)), true, unwritable);
+        assert failedToStore.isRejected();
+        assert failedToStore.getRejectionStatus() == HttpStatusCode.INTERNAL_ERROR;
+    }
+
+    /**
+     * Test repeated form fields are joined and a reset decoder decodes the next request from scratch.
+     * @throws Exception
+     */
+    @Test
+    public void testDecoderFieldsAndReset() throws Exception {
+        byte[] body = ("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"tag\"\r\n\r\na\r\n"
+                + "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"tag\"\r\n\r\nb\r\n"
+                + "--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        HttpRequestDecoder decoder = decode(body, true, new MultipartConfig());
+        assert decoder.getResult().getBodyParams().get("tag").equals("a || b");
+
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap("GET /ha".getBytes(StandardCharsets.US_ASCII)));
+        decoder.reset();
+        decode(decoder, body, true);
+        assert !decoder.isRejected();
+        assert decoder.getResult().getUri().getPath().equals("/upload");
+        assert decoder.getResult().getParts().size() == 2;
+    }
+}
@@ -0,0 +1,59 @@
+import org.junit.Test;
+import xl.net.http.RateLimiter;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate Limiter Test. (Helper functions are not commented.)
+ */
+public class RateLimiterTest {
+
+    /**
+     * Test a client can send a burst, then is limited to the sustained rate.
+     * @throws Exception
+     */
+    @Test
+    public void testBurstThenRate() throws Exception {
+        RateLimiter limiter = new RateLimiter(20, 3, 1024, 1, TimeUnit.MINUTES);
+        InetSocketAddress client = new InetSocketAddress("127.0.0.1", 40000);
+
+        for (int i = 0; i < 3; i++) assert limiter.tryAcquire(client);
+        assert !limiter.tryAcquire(new InetSocketAddress("127.0.0.1", 40001));
+        assert limiter.tryAcquire(new InetSocketAddress("127.0.0.2", 40000));
+        assert limiter.getRejectedCount() == 1;
+
+        Thread.sleep(60);
+        assert limiter.tryAcquire(client);
+    }
+
+    /**
+     * Test idle clients are evicted once the table is full.
+     * @throws Exception
+     */
+    @Test
+    public void testEviction() throws Exception {
+        RateLimiter limiter = new RateLimiter(1, 1, 64, 50, TimeUnit.MILLISECONDS);
+
+        assert limiter.tryAcquire("first");
+        assert !limiter.tryAcquire("first");
+        for (int i = 0; i < 1000; i++) limiter.tryAcquire("filler-" + i);
+
+        Thread.sleep(1100);
+        for (int i = 0; i < 1000; i++) limiter.tryAcquire("filler-" + i);
+        assert limiter.tryAcquire("first");
+    }
+
+    /**
+     * Test a newcomer is still limited when the table is full of active clients.
+     * @throws Exception
+     */
+    @Test
+    public void testFullTable() throws Exception {
+        RateLimiter limiter = new RateLimiter(1, 1, 64, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 1000; i++) limiter.tryAcquire("filler-" + i);
+
+        assert limiter.tryAcquire("late");
+        assert !limiter.tryAcquire("late");
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.Test;
+import xl.net.http.SessionStore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session Store Test. (Helper functions are not commented.)
+ */
+public class SessionStoreTest {
+
+    private static ByteBuffer data(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String text(ByteBuffer buffer) {
+        return buffer == null ? null : StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    /**
+     * Test creating, reading, replacing and removing sessions.
+     * @throws Exception
+     */
+    @Test
+    public void testCreateGetPutRemove() throws Exception {
+        SessionStore store = new SessionStore(16 * 1024 * 1024, 1, TimeUnit.MINUTES);
+        String id = store.create(data("user=alice"));
+        assert id.matches("[0-9a-f]{32}");
+        assert text(store.get(id)).equals("user=alice");
+
+        assert store.put(id, data("user=alice;cart=3"));
+        assert text(store.get(id)).equals("user=alice;cart=3");
+        assert !store.put("00000000000000000000000000000001", data("forged"));
+        assert store.get("not-a-session-id") == null;
+
+        assert store.remove(id);
+        assert !store.remove(id);
+        assert store.get(id) == null;
+        assert store.size() == 0;
+    }
+
+    /**
+     * Test sessions expire after the TTL unless they are accessed.
+     * @throws Exception
+     */
+    @Test
+    public void testExpiry() throws Exception {
+        SessionStore store = new SessionStore(16 * 1024 * 1024, 100, TimeUnit.MILLISECONDS);
+        String touched = store.create(data("touched"));
+        String idle = store.create(data("idle"));
+
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(40);
+            assert store.get(touched) != null;
+        }
+        assert store.evictExpired() == 1;
+        assert store.get(idle) == null;
+        assert text(store.get(touched)).equals("touched");
+    }
+
+    /**
+     * Test the memory cap holds under churn, compacting the arenas and evicting the sessions expiring soonest.
+     * @throws Exception
+     */
+    @Test
+    public void testMemoryCap() throws Exception {
+        long maxMemory = 1024 * 1024;
+        SessionStore store = new SessionStore(maxMemory, 1, TimeUnit.MINUTES);
+        byte[] payload = new byte[1000];
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            ids.add(store.create(ByteBuffer.wrap(payload)));
+            if (i % 2 == 0) store.remove(ids.get(i / 2));
+        }
+        assert store.getMemoryUsed() <= maxMemory;
+        assert store.size() > 0 && store.size() * 1000L <= maxMemory;
+
+        String latest = ids.get(ids.size() - 1);
+        assert store.get(latest).remaining() == 1000;
+        assert store.get(ids.get(0)) == null;
+    }
+}
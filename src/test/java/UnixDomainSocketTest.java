@@ -0,0 +1,54 @@
+import org.junit.Test;
+import xl.net.http.HttpServer;
+
+import java.net.HttpURLConnection;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static xl.net.http.TestHttp.anyPort;
+import static xl.net.http.TestHttp.readTextResponse;
+import static xl.net.http.TestHttp.url;
+import static xl.net.http.TestHttp.writeTextResponse;
+
+/**
+ * Unix Domain Socket Test. (Helper functions are not commented.)
+ */
+public class UnixDomainSocketTest {
+
+    /**
+     * Test a server listening on a Unix domain socket and on TCP, with keep-alive over the socket file.
+     * @throws Exception
+     */
+    @Test
+    public void testUnixDomainSocket() throws Exception {
+        Path path = Files.createTempDirectory("http-server").resolve("http.sock");
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(path);
+        HttpServer localServer = new HttpServer(address);
+        localServer.addListener(anyPort());
+        localServer.handleGetOn("\\/.*", (request, response) -> writeTextResponse(response, "Local " + request.getUri()));
+        localServer.start();
+
+        try {
+            byte[] request = "GET /first HTTP/1.0\r\nConnection: keep-alive\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+            try (SocketChannel channel = SocketChannel.open(address)) {
+                channel.write(ByteBuffer.wrap(request));
+                String first = readTextResponse(channel, "Local /first");
+                assert first.startsWith("HTTP/1.0 200 OK") && first.contains("Connection: keep-alive");
+
+                Thread.sleep(100);
+                channel.write(ByteBuffer.wrap("GET /second HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+                assert readTextResponse(channel, "Local /second").startsWith("HTTP/1.0 200 OK");
+            }
+
+            HttpURLConnection connection = (HttpURLConnection) url(localServer, "/tcp").openConnection();
+            assert readTextResponse(connection.getInputStream()).equals("Local /tcp");
+        } finally {
+            localServer.shutdown();
+        }
+        assert !Files.exists(path);
+    }
+}
@@ -0,0 +1,86 @@
+package xl.net.http;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the pre-encoded header encoder with the String.format based encoder it replaced, on a typical
+ * keep-alive response with a small entity.
+ * Run the main method from the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeaderEncodingBenchmark {
+
+    private HttpResponse response;
+
+    @Setup
+    public void setup() {
+        HeaderEncoder.registerConstant("Server", "Plain Old HTTP Server");
+        response = new HttpResponse("HTTP/1.0", HttpStatusCode.OK);
+        response.getHeaders().put("Server", "Plain Old HTTP Server");
+        response.getHeaders().put("Content-Type", "text/plain");
+        response.getHeaders().put("X-Filtered", "true");
+        response.getHeaders().put("Connection", "keep-alive");
+        response.setEntity(ByteBuffer.allocate(128));
+    }
+
+    @Benchmark
+    public ByteBuffer preEncoded() {
+        response.setContentLength(128);
+        return HttpResponse.output(response);
+    }
+
+    @Benchmark
+    public ByteBuffer legacyFormat() throws UnsupportedEncodingException {
+        response.getHeaders().put("Content-Length", String.valueOf(128));
+        ByteBuffer output = legacyOutput(response);
+        response.getHeaders().remove("Content-Length");
+        return output;
+    }
+
+    /**
+     * The encoder of HttpResponse.output before the header encoding engine, kept as the baseline.
+     */
+    private static ByteBuffer legacyOutput(HttpResponse response) throws UnsupportedEncodingException {
+        StringBuilder sb = new StringBuilder(50);
+
+        HttpStatusCode statusCode = response.getStatusCode();
+        Map<String, String> headers = response.getHeaders();
+        ByteBuffer entity = response.getEntity().duplicate();
+
+        String statusLine = String.format("%s %d %s\r\n",
+                "HTTP/1.0", statusCode.getCode(), statusCode.getReasonPhrase());
+        sb.append(statusLine);
+
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            String headerLine = String.format("%s: %s\r\n", entry.getKey(), entry.getValue());
+            sb.append(headerLine);
+        }
+
+        sb.append("\r\n");
+
+        byte[] headBytes = sb.toString().getBytes("UTF-8");
+        ByteBuffer ret = ByteBuffer.allocate(headBytes.length + entity.limit());
+        ret.put(headBytes);
+        ret.put(entity);
+
+        ret.flip();
+        return ret;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HeaderEncodingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,64 @@
+package xl.net.http;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the overhead of a compiled filter chain, the cost per filter is the slope over filterCount.
+ * Run the main method from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpFilterChainBenchmark {
+
+    @Param({"0", "1", "4", "16"})
+    private int filterCount;
+
+    private HttpFilterChain chain;
+    private HttpRequest request;
+    private HttpResponse response;
+
+    @Setup
+    public void setup() {
+        List<HttpFilter> filters = new ArrayList<>();
+        for (int i = 0; i < filterCount; i++) {
+            switch (i % 3) {
+                case 0:
+                    filters.add(HttpFilter.before((request, response) -> request.getMethod() == HttpMethod.GET));
+                    break;
+                case 1:
+                    filters.add(HttpFilter.after((request, response) -> response.setStatusCode(HttpStatusCode.OK)));
+                    break;
+                default:
+                    filters.add((request, response, next) -> next.proceed(request, response));
+            }
+        }
+        chain = HttpFilterChain.compile(filters, (request, response) -> response.setStatusCode(HttpStatusCode.OK));
+
+        request = new HttpRequest();
+        request.setMethod(HttpMethod.GET);
+        request.setUri(URI.create("/"));
+        response = new HttpResponse("HTTP/1.0", HttpStatusCode.OK);
+    }
+
+    @Benchmark
+    public HttpResponse proceed() {
+        chain.proceed(request, response);
+        return response;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HttpFilterChainBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,130 @@
+package xl.net.http;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the TLS handshake rate (full and resumed) and the encrypted throughput of keep-alive requests,
+ * against a server using a locally generated self-signed certificate.
+ * Run the main method from the test classpath.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpsServerBenchmark {
+
+    private static final int PORT = 9543;
+    private static final byte[] CRLFCRLF = {13, 10, 13, 10};
+
+    @State(Scope.Benchmark)
+    public static class ServerState {
+        private HttpServer server;
+        private SSLContext clientContext;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            server = new HttpServer(new InetSocketAddress("127.0.0.1", PORT), new TlsConfig(TestKeyStores.serverContext()));
+            server.handleGetOn("\\/payload\\/\\d+", (request, response) -> {
+                int size = Integer.parseInt(request.getUri().getPath().substring("/payload/".length()));
+                response.getHeaders().put("Content-Length", String.valueOf(size));
+                response.setEntity(ByteBuffer.allocate(size));
+            });
+            server.start();
+            clientContext = TestKeyStores.clientContext();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            server.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ConnectionState {
+        @Param({"1024", "65536"})
+        private int payloadSize;
+
+        private SSLSocket socket;
+        private byte[] request;
+        private byte[] buffer;
+
+        @Setup(Level.Trial)
+        public void connect(ServerState serverState) throws IOException {
+            socket = (SSLSocket) serverState.clientContext.getSocketFactory().createSocket("127.0.0.1", PORT);
+            socket.setTcpNoDelay(true);
+            socket.startHandshake();
+            request = ("GET /payload/" + payloadSize + " HTTP/1.0\r\nConnection: keep-alive\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            buffer = new byte[payloadSize + 1024];
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public void fullHandshake(ServerState serverState) throws IOException {
+        try (SSLSocket socket = (SSLSocket) serverState.clientContext.getSocketFactory().createSocket("127.0.0.1", PORT)) {
+            socket.setTcpNoDelay(true);
+            socket.startHandshake();
+            socket.getSession().invalidate();
+        }
+    }
+
+    @Benchmark
+    public void resumedHandshake(ServerState serverState) throws IOException {
+        try (SSLSocket socket = (SSLSocket) serverState.clientContext.getSocketFactory().createSocket("127.0.0.1", PORT)) {
+            socket.setTcpNoDelay(true);
+            socket.startHandshake();
+        }
+    }
+
+    @Benchmark
+    public int encryptedThroughput(ConnectionState connectionState) throws IOException {
+        OutputStream output = connectionState.socket.getOutputStream();
+        output.write(connectionState.request);
+        output.flush();
+        return readResponse(connectionState.socket.getInputStream(), connectionState.buffer, connectionState.payloadSize);
+    }
+
+    private static int readResponse(InputStream input, byte[] buffer, int payloadSize) throws IOException {
+        int length = 0;
+        int headEnd = -1;
+        while (headEnd < 0 || length < headEnd + payloadSize) {
+            int read = input.read(buffer, length, buffer.length - length);
+            if (read < 0) throw new IOException("Connection closed by the server.");
+            length += read;
+            if (headEnd < 0) headEnd = indexOf(buffer, length, CRLFCRLF);
+        }
+        return length;
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= length; i++) {
+            int j = 0;
+            while (j < pattern.length && data[i + j] == pattern[j]) j++;
+            if (j == pattern.length) return i + pattern.length;
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HttpsServerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,133 @@
+package xl.net.http;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare loopback TCP and Unix domain socket latency and throughput for keep-alive requests and for
+ * a new connection per request, against one server listening on both.
+ * Run the main method from the test classpath.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalSocketBenchmark {
+
+    private static final int PORT = 9544;
+    private static final byte[] CRLFCRLF = {13, 10, 13, 10};
+
+    @State(Scope.Benchmark)
+    public static class ServerState {
+        @Param({"tcp", "uds"})
+        private String transport;
+
+        private HttpServer server;
+        private SocketAddress address;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            UnixDomainSocketAddress socketFile = UnixDomainSocketAddress.of(
+                    Files.createTempDirectory("http-benchmark").resolve("http.sock"));
+            server = new HttpServer(new InetSocketAddress("127.0.0.1", PORT));
+            server.addListener(socketFile);
+            server.handleGetOn("\\/payload\\/\\d+", (request, response) -> {
+                int size = Integer.parseInt(request.getUri().getPath().substring("/payload/".length()));
+                response.getHeaders().put("Content-Length", String.valueOf(size));
+                response.setEntity(ByteBuffer.allocate(size));
+            });
+            server.start();
+            address = "uds".equals(transport) ? socketFile : new InetSocketAddress("127.0.0.1", PORT);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            server.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ConnectionState {
+        @Param({"128", "16384"})
+        private int payloadSize;
+
+        private SocketChannel channel;
+        private ByteBuffer keepAliveRequest;
+        private ByteBuffer closeRequest;
+        private ByteBuffer buffer;
+
+        @Setup(Level.Trial)
+        public void connect(ServerState serverState) throws IOException {
+            channel = open(serverState.address);
+            keepAliveRequest = ByteBuffer.wrap(("GET /payload/" + payloadSize + " HTTP/1.0\r\nConnection: keep-alive\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            closeRequest = ByteBuffer.wrap(("GET /payload/" + payloadSize + " HTTP/1.0\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            buffer = ByteBuffer.allocate(payloadSize + 1024);
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            channel.close();
+        }
+    }
+
+    @Benchmark
+    public int keepAlive(ConnectionState connectionState) throws IOException {
+        return exchange(connectionState.channel, connectionState.keepAliveRequest, connectionState);
+    }
+
+    @Benchmark
+    public int connectionPerRequest(ServerState serverState, ConnectionState connectionState) throws IOException {
+        try (SocketChannel channel = open(serverState.address)) {
+            return exchange(channel, connectionState.closeRequest, connectionState);
+        }
+    }
+
+    private static SocketChannel open(SocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        if (address instanceof InetSocketAddress) channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        return channel;
+    }
+
+    private static int exchange(SocketChannel channel, ByteBuffer request, ConnectionState connectionState) throws IOException {
+        request.rewind();
+        while (request.hasRemaining()) channel.write(request);
+
+        ByteBuffer buffer = connectionState.buffer;
+        buffer.clear();
+        int headEnd = -1;
+        while (headEnd < 0 || buffer.position() < headEnd + connectionState.payloadSize) {
+            if (channel.read(buffer) < 0) throw new IOException("Connection closed by the server.");
+            if (headEnd < 0) headEnd = indexOf(buffer.array(), buffer.position(), CRLFCRLF);
+        }
+        return buffer.position();
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= length; i++) {
+            int j = 0;
+            while (j < pattern.length && data[i + j] == pattern[j]) j++;
+            if (j == pattern.length) return i + pattern.length;
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LocalSocketBenchmark.class.getSimpleName()).build()).run();
+    }
+}
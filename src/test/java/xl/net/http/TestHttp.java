@@ -0,0 +1,72 @@
+package xl.net.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Shared helpers of the tests running a server on the loopback interface, every server is bound to a port
+ * chosen by the system so that test classes never collide.
+ * (Helper functions are not commented.)
+ */
+public final class TestHttp {
+
+    public static final String HOST = "127.0.0.1";
+
+    private TestHttp() {
+    }
+
+    public static InetSocketAddress anyPort() {
+        return new InetSocketAddress(HOST, 0);
+    }
+
+    public static int portOf(HttpServer server) throws IOException {
+        for (SocketAddress address : server.getLocalAddresses()) {
+            if (address instanceof InetSocketAddress) return ((InetSocketAddress) address).getPort();
+        }
+        throw new IllegalStateException("The server has no TCP listener.");
+    }
+
+    public static URL url(HttpServer server, String path) throws IOException {
+        return url("http", server, path);
+    }
+
+    public static URL url(String scheme, HttpServer server, String path) throws IOException {
+        return new URL(scheme + "://" + HOST + ":" + portOf(server) + path);
+    }
+
+    public static String readTextResponse(InputStream is) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
+            StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line);
+            }
+            return sb.toString();
+        }
+    }
+
+    public static String readTextResponse(SocketChannel channel, String ending) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        String text = "";
+        while (!text.endsWith(ending)) {
+            if (channel.read(buffer) < 0) break;
+            text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        }
+        return text;
+    }
+
+    public static void writeTextResponse(HttpResponse response, String content) {
+        ByteBuffer responseBody = ByteBuffer.wrap(content.getBytes());
+        response.getHeaders().put("Content-Type", "text/plain");
+        response.getHeaders().put("Content-Length", String.valueOf(responseBody.limit()));
+        response.setEntity(responseBody);
+    }
+}
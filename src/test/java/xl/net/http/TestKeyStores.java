@@ -0,0 +1,69 @@
+package xl.net.http;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * Generate a self-signed keystore for 127.0.0.1 with the keytool of the running JDK.
+ * (Helper functions are not commented.)
+ */
+public final class TestKeyStores {
+
+    public static final char[] PASSWORD = "changeit".toCharArray();
+
+    private static KeyStore keyStore;
+
+    private TestKeyStores() {
+    }
+
+    public static synchronized KeyStore selfSigned() throws IOException, GeneralSecurityException {
+        if (keyStore != null) return keyStore;
+
+        Path file = Files.createTempDirectory("keystore").resolve("server.p12");
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server",
+                "-keyalg", "EC", "-keysize", "256", "-validity", "1",
+                "-dname", "CN=localhost", "-ext", "SAN=ip:127.0.0.1,dns:localhost",
+                "-storetype", "PKCS12", "-keystore", file.toString(),
+                "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+                .redirectErrorStream(true).start();
+        try {
+            if (process.waitFor() != 0) throw new IOException("keytool failed with exit code " + process.exitValue());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream input = Files.newInputStream(file)) {
+            store.load(input, PASSWORD);
+        }
+        Files.delete(file);
+        keyStore = store;
+        return store;
+    }
+
+    public static SSLContext serverContext() throws IOException, GeneralSecurityException {
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(selfSigned(), PASSWORD);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        return context;
+    }
+
+    public static SSLContext clientContext() throws IOException, GeneralSecurityException {
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(selfSigned());
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context;
+    }
+}